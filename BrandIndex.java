@@ -0,0 +1,39 @@
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.TreeMap;
+
+// Brand -> that brand's products in name order, both case-insensitive.
+// Brand never changes after a product is created, so unlike PriceIndex this
+// doesn't need to listen for updates. Not thread-safe; Main uses it under
+// the catalog lock.
+public class BrandIndex {
+    private final HashMap<String, TreeMap<String, Product>> byBrand = new HashMap<>();
+
+    public void add(Product p) {
+        byBrand.computeIfAbsent(p.getBrand().toLowerCase(), b -> new TreeMap<>(String.CASE_INSENSITIVE_ORDER))
+                .putIfAbsent(p.getName(), p);
+    }
+
+    public void remove(Product p) {
+        String key = p.getBrand().toLowerCase();
+        TreeMap<String, Product> products = byBrand.get(key);
+        if (products == null || products.get(p.getName()) != p) return;
+        products.remove(p.getName());
+        if (products.isEmpty()) {
+            byBrand.remove(key);
+        }
+    }
+
+    // Exact, O(1)
+    public int count(String brand) {
+        TreeMap<String, Product> products = byBrand.get(brand.toLowerCase());
+        return products == null ? 0 : products.size();
+    }
+
+    // The brand's products in name order, one at a time
+    public Iterator<Product> ofBrand(String brand) {
+        TreeMap<String, Product> products = byBrand.get(brand.toLowerCase());
+        return products == null ? Collections.emptyIterator() : products.values().iterator();
+    }
+}
@@ -0,0 +1,285 @@
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+// Hash table of users by username, safe for the multi-session server, with
+// a second index from (first name, last name) to usernames.
+//
+// Reads take no lock. Chains are never changed in place: an insert pushes a
+// new head and an update only swaps the (volatile) value, so a reader
+// walking a chain always sees a consistent list.
+//
+// Writes lock one of STRIPES stripes; bucket i belongs to stripe
+// i % STRIPES. Tables are powers of two no smaller than STRIPES, so when a
+// bucket splits in a resize both halves stay in the same stripe.
+//
+// Resizing copies one stripe at a time under that stripe's lock, leaving a
+// Forward marker in each old bucket it has moved. Everything else keeps
+// working meanwhile: readers and writers that land on a marker just follow
+// it into the new table.
+public class ConcurrentHashTableUser implements Iterable<User> {
+    private static class Entry {
+        final String key;
+        final int hash;
+        volatile User value;
+        final Entry next;
+
+        Entry(String key, int hash, User value, Entry next) {
+            this.key = key;
+            this.hash = hash;
+            this.value = value;
+            this.next = next;
+        }
+    }
+
+    // Left in an old bucket once its entries have been copied to nextTable
+    private static class Forward extends Entry {
+        final AtomicReferenceArray<Entry> nextTable;
+
+        Forward(AtomicReferenceArray<Entry> nextTable) {
+            super(null, 0, null, null);
+            this.nextTable = nextTable;
+        }
+    }
+
+    private static final float LOAD_FACTOR = 0.75f;
+    private static final int STRIPES = 64; // also the minimum capacity
+
+    private volatile AtomicReferenceArray<Entry> table;
+    private final Object[] locks = new Object[STRIPES];
+    private final AtomicInteger size = new AtomicInteger();
+    private final AtomicBoolean resizing = new AtomicBoolean();
+
+    // (first, last) -> usernames
+    private final ConcurrentHashMap<String, Set<String>> byName = new ConcurrentHashMap<>();
+
+    public ConcurrentHashTableUser(int capacity) {
+        int cap = STRIPES;
+        while (cap < capacity) {
+            cap <<= 1;
+        }
+        table = new AtomicReferenceArray<>(cap);
+        for (int i = 0; i < STRIPES; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    private static int spread(int h) {
+        return h ^ (h >>> 16);
+    }
+
+    private Object lockFor(int h) {
+        return locks[h & (STRIPES - 1)];
+    }
+
+    // Adds the user, or replaces the one stored under key
+    public void insert(String key, User value) {
+        put(key, value, false);
+    }
+
+    // Adds the user unless key is taken; returns the existing user, or null
+    // if value was added
+    public User insertIfAbsent(String key, User value) {
+        return put(key, value, true);
+    }
+
+    private User put(String key, User value, boolean onlyIfAbsent) {
+        int h = spread(key.hashCode());
+        synchronized (lockFor(h)) {
+            AtomicReferenceArray<Entry> t = table;
+            int index = h & (t.length() - 1);
+            Entry head = t.get(index);
+            // no other thread can move this stripe while we hold its lock,
+            // so following the markers once leads to the live bucket
+            while (head instanceof Forward) {
+                t = ((Forward) head).nextTable;
+                index = h & (t.length() - 1);
+                head = t.get(index);
+            }
+            for (Entry e = head; e != null; e = e.next) {
+                if (e.hash == h && e.key.equals(key)) {
+                    User old = e.value;
+                    if (!onlyIfAbsent) {
+                        e.value = value;
+                        unindexName(old);
+                        indexName(value);
+                    }
+                    return old;
+                }
+            }
+            t.set(index, new Entry(key, h, value, head));
+            indexName(value);
+        }
+        if (size.incrementAndGet() > LOAD_FACTOR * table.length() && resizing.compareAndSet(false, true)) {
+            resize();
+        }
+        return null;
+    }
+
+    public User search(String key) {
+        int h = spread(key.hashCode());
+        AtomicReferenceArray<Entry> t = table;
+        Entry e = t.get(h & (t.length() - 1));
+        while (e instanceof Forward) {
+            t = ((Forward) e).nextTable;
+            e = t.get(h & (t.length() - 1));
+        }
+        for (; e != null; e = e.next) {
+            if (e.hash == h && e.key.equals(key)) {
+                return e.value;
+            }
+        }
+        return null;
+    }
+
+    // Usernames of every user with this first and last name (case-insensitive)
+    public List<String> searchByName(String firstName, String lastName) {
+        Set<String> usernames = byName.get(nameKey(firstName, lastName));
+        return usernames == null ? Collections.emptyList() : new ArrayList<>(usernames);
+    }
+
+    public int size() {
+        return size.get();
+    }
+
+    // Weakly consistent: never blocks writers, returns every user that was
+    // present for the whole walk exactly once, and may or may not include
+    // users added or replaced during it
+    @Override
+    public Iterator<User> iterator() {
+        return new UserIterator(table);
+    }
+
+    // --------------------------
+    // Name index
+    // --------------------------
+    private static String nameKey(String firstName, String lastName) {
+        // '\0' can't appear in a name typed at the console, so keys can't
+        // collide. Locale.ROOT so the key doesn't depend on the machine's
+        // language (a Turkish locale lower-cases "I" to a dotless i).
+        return firstName.toLowerCase(Locale.ROOT) + '\0' + lastName.toLowerCase(Locale.ROOT);
+    }
+
+    // compute() serializes changes to the same name coming from different
+    // stripes, so a set is never dropped while another user is joining it
+    private void indexName(User u) {
+        byName.compute(nameKey(u.getFirstName(), u.getLastName()), (k, usernames) -> {
+            if (usernames == null) {
+                usernames = ConcurrentHashMap.newKeySet();
+            }
+            usernames.add(u.getUsername());
+            return usernames;
+        });
+    }
+
+    private void unindexName(User u) {
+        byName.computeIfPresent(nameKey(u.getFirstName(), u.getLastName()), (k, usernames) -> {
+            usernames.remove(u.getUsername());
+            return usernames.isEmpty() ? null : usernames;
+        });
+    }
+
+    // --------------------------
+    // Resize
+    // --------------------------
+
+    // Doubles the table. Only one resize runs at a time (the resizing flag);
+    // it holds one stripe lock at a time, so writers to the other stripes
+    // carry on.
+    private void resize() {
+        try {
+            AtomicReferenceArray<Entry> old = table;
+            int n = old.length();
+            AtomicReferenceArray<Entry> next = new AtomicReferenceArray<>(n << 1);
+            Forward forward = new Forward(next);
+            for (int s = 0; s < STRIPES; s++) {
+                synchronized (locks[s]) {
+                    for (int i = s; i < n; i += STRIPES) {
+                        // Copy rather than relink, so readers still walking
+                        // the old chain aren't disturbed
+                        Entry lo = null, hi = null;
+                        for (Entry e = old.get(i); e != null; e = e.next) {
+                            if ((e.hash & n) == 0) {
+                                lo = new Entry(e.key, e.hash, e.value, lo);
+                            } else {
+                                hi = new Entry(e.key, e.hash, e.value, hi);
+                            }
+                        }
+                        next.set(i, lo);
+                        next.set(i + n, hi);
+                        old.set(i, forward);
+                    }
+                }
+            }
+            table = next;
+        } finally {
+            resizing.set(false);
+        }
+    }
+
+    // Walks the buckets of the table it started on. A bucket that has been
+    // moved since is replaced by the two buckets it split into.
+    private static class UserIterator implements Iterator<User> {
+        private final AtomicReferenceArray<Entry> base;
+        private int baseIndex;
+        // buckets of newer tables still to visit, as (table, index)
+        private final ArrayDeque<Object[]> pending = new ArrayDeque<>();
+        private Entry current;
+
+        UserIterator(AtomicReferenceArray<Entry> base) {
+            this.base = base;
+            advance();
+        }
+
+        @SuppressWarnings("unchecked")
+        private void advance() {
+            if (current != null) {
+                current = current.next;
+            }
+            while (current == null) {
+                AtomicReferenceArray<Entry> t;
+                int i;
+                if (!pending.isEmpty()) {
+                    Object[] slot = pending.pop();
+                    t = (AtomicReferenceArray<Entry>) slot[0];
+                    i = (Integer) slot[1];
+                } else if (baseIndex < base.length()) {
+                    t = base;
+                    i = baseIndex++;
+                } else {
+                    return;
+                }
+                Entry head = t.get(i);
+                if (head instanceof Forward) {
+                    AtomicReferenceArray<Entry> next = ((Forward) head).nextTable;
+                    pending.push(new Object[] {next, i + t.length()});
+                    pending.push(new Object[] {next, i});
+                } else {
+                    current = head;
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return current != null;
+        }
+
+        @Override
+        public User next() {
+            if (current == null) throw new NoSuchElementException();
+            User u = current.value;
+            advance();
+            return u;
+        }
+    }
+}
@@ -0,0 +1,190 @@
+import java.nio.charset.StandardCharsets;
+
+// Reusable tokenizer for one CSV line held in a byte buffer.
+// Fields are handed out as views over the buffer: ints, doubles, booleans
+// and enums are parsed straight from the bytes, and only fields the caller
+// asks for with stringValue() are turned into Strings. A field may be
+// wrapped in double quotes to hold commas; "" inside quotes is a literal
+// quote. Nothing is allocated per line or per field otherwise.
+//
+// Usage: reset(buf, start, end), then next() before reading each field.
+public class CsvTokenizer {
+    // 10^0 .. 10^22 are exact doubles
+    private static final double[] POW10 = new double[23];
+    static {
+        POW10[0] = 1;
+        for (int i = 1; i < POW10.length; i++) {
+            POW10[i] = POW10[i - 1] * 10;
+        }
+    }
+
+    private byte[] buf;
+    private int pos;      // start of the next field
+    private int end;      // end of the line
+    private boolean more; // a field starts at pos
+
+    private int fieldStart, fieldEnd; // current field, quotes excluded
+    private boolean escapedQuotes;    // current field contains ""
+
+    // Points the tokenizer at buf[start, end), one line without its newline
+    public void reset(byte[] buf, int start, int end) {
+        this.buf = buf;
+        this.pos = start;
+        this.end = end;
+        this.more = true;
+    }
+
+    // Advances to the next field; false once the line is used up
+    public boolean next() {
+        if (!more) return false;
+        escapedQuotes = false;
+        if (pos < end && buf[pos] == '"') {
+            int i = pos + 1;
+            fieldStart = i;
+            while (true) {
+                if (i >= end) {
+                    throw new IllegalArgumentException("unterminated quoted field");
+                }
+                if (buf[i] == '"') {
+                    if (i + 1 < end && buf[i + 1] == '"') {
+                        escapedQuotes = true;
+                        i += 2;
+                        continue;
+                    }
+                    break;
+                }
+                i++;
+            }
+            fieldEnd = i;
+            i++; // closing quote
+            if (i < end && buf[i] != ',') {
+                throw new IllegalArgumentException("text after closing quote");
+            }
+            pos = i + 1;
+            more = i < end;
+        } else {
+            int i = pos;
+            while (i < end && buf[i] != ',') {
+                i++;
+            }
+            fieldStart = pos;
+            fieldEnd = i;
+            pos = i + 1;
+            more = i < end;
+        }
+        return true;
+    }
+
+    // True if the line has no fields left
+    public boolean atEnd() {
+        return !more;
+    }
+
+    public String stringValue() {
+        if (!escapedQuotes) {
+            return new String(buf, fieldStart, fieldEnd - fieldStart, StandardCharsets.UTF_8);
+        }
+        byte[] out = new byte[fieldEnd - fieldStart];
+        int n = 0;
+        for (int i = fieldStart; i < fieldEnd; i++) {
+            out[n++] = buf[i];
+            if (buf[i] == '"') i++; // skip the second quote of ""
+        }
+        return new String(out, 0, n, StandardCharsets.UTF_8);
+    }
+
+    public int intValue() {
+        int i = fieldStart;
+        boolean negative = false;
+        if (i < fieldEnd && (buf[i] == '-' || buf[i] == '+')) {
+            negative = buf[i] == '-';
+            i++;
+        }
+        if (i == fieldEnd) throw badNumber();
+        // accumulate negatively so Integer.MIN_VALUE fits
+        int value = 0;
+        for (; i < fieldEnd; i++) {
+            int d = buf[i] - '0';
+            if (d < 0 || d > 9 || value < (Integer.MIN_VALUE + d) / 10) throw badNumber();
+            value = value * 10 - d;
+        }
+        if (!negative) {
+            if (value == Integer.MIN_VALUE) throw badNumber();
+            value = -value;
+        }
+        return value;
+    }
+
+    public double doubleValue() {
+        // Fast path for plain decimals like 249.99: with at most 15 digits the
+        // digits are an exact long, and one division by an exact power of ten
+        // rounds correctly. Anything else goes through Double.parseDouble.
+        int i = fieldStart;
+        boolean negative = false;
+        if (i < fieldEnd && (buf[i] == '-' || buf[i] == '+')) {
+            negative = buf[i] == '-';
+            i++;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int fractionDigits = 0;
+        boolean dot = false;
+        for (; i < fieldEnd; i++) {
+            byte b = buf[i];
+            if (b >= '0' && b <= '9') {
+                mantissa = mantissa * 10 + (b - '0');
+                digits++;
+                if (dot) fractionDigits++;
+            } else if (b == '.' && !dot) {
+                dot = true;
+            } else {
+                break;
+            }
+        }
+        if (i == fieldEnd && digits > 0 && digits <= 15) {
+            double value = mantissa / POW10[fractionDigits];
+            return negative ? -value : value;
+        }
+        return Double.parseDouble(stringValue());
+    }
+
+    // Same rule as Boolean.parseBoolean: "true" in any case, else false
+    public boolean booleanValue() {
+        return equalsIgnoreCase("true");
+    }
+
+    // Matches the field against the constant names, ignoring case
+    public <E extends Enum<E>> E enumValue(E[] constants) {
+        for (E e : constants) {
+            if (equalsIgnoreCase(e.name())) return e;
+        }
+        throw new IllegalArgumentException("no constant " + stringValue());
+    }
+
+    // Compares the field with an ASCII string, ignoring case
+    public boolean equalsIgnoreCase(String ascii) {
+        if (fieldEnd - fieldStart != ascii.length()) return false;
+        for (int i = 0; i < ascii.length(); i++) {
+            int a = buf[fieldStart + i];
+            int b = ascii.charAt(i);
+            if (a != b && Character.toLowerCase(a) != Character.toLowerCase(b)) return false;
+        }
+        return true;
+    }
+
+    private NumberFormatException badNumber() {
+        return new NumberFormatException("not a number: " + stringValue());
+    }
+
+    // --------------------------
+    // Writing
+    // --------------------------
+
+    // Returns s as a CSV field, quoted only if it holds a comma or quote
+    public static String quote(String s) {
+        if (s.indexOf(',') < 0 && s.indexOf('"') < 0) {
+            return s;
+        }
+        return '"' + s.replace("\"", "\"\"") + '"';
+    }
+}
@@ -0,0 +1,62 @@
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+// Secondary index: username -> that customer's orders, split into
+// shipped and unshipped lists. Lets a customer's order history be shown in
+// O(their orders) instead of scanning every order in the store.
+// Unshipped orders are keyed by order ID, in the order they were placed, so
+// shipping or cancelling one doesn't scan the customer's other orders.
+public class CustomerOrderIndex {
+    private class Lists {
+        ArrayList<Order> shipped = new ArrayList<>();
+        LinkedHashMap<Integer, Order> unshipped = new LinkedHashMap<>();
+    }
+
+    private HashMap<String, Lists> byUser = new HashMap<>();
+
+    public void add(Order o) {
+        Lists l = byUser.computeIfAbsent(o.getUsername(), k -> new Lists());
+        if (o.isShipped()) {
+            l.shipped.add(o);
+        } else {
+            l.unshipped.put(o.getOrderID(), o);
+        }
+    }
+
+    // Moves o from its customer's unshipped orders to the shipped list.
+    // Call after o.setShipped(true).
+    public void markShipped(Order o) {
+        Lists l = byUser.get(o.getUsername());
+        // Order doesn't override equals, so this only removes o itself
+        if (l == null || !l.unshipped.remove(o.getOrderID(), o)) {
+            // wasn't indexed as unshipped; just record it
+            add(o);
+            return;
+        }
+        l.shipped.add(o);
+    }
+
+    // Drops an unshipped order (e.g. when it's cancelled)
+    public void removeUnshipped(Order o) {
+        Lists l = byUser.get(o.getUsername());
+        if (l != null) {
+            l.unshipped.remove(o.getOrderID(), o);
+        }
+    }
+
+    // Oldest first
+    public List<Order> getShipped(String username) {
+        Lists l = byUser.get(username);
+        return l == null ? Collections.emptyList() : Collections.unmodifiableList(l.shipped);
+    }
+
+    // Oldest first
+    public Collection<Order> getUnshipped(String username) {
+        Lists l = byUser.get(username);
+        return l == null ? Collections.emptyList() : Collections.unmodifiableCollection(l.unshipped.values());
+    }
+}
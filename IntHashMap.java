@@ -0,0 +1,145 @@
+
+// Open-addressing hash map from a primitive int key to a value.
+// Keys live in an int[] next to a parallel value array, so lookups don't box
+// the key or allocate. Collisions use linear probing; removal shifts the rest
+// of the probe run back instead of leaving tombstones. Null values aren't
+// allowed (an empty slot is a null value).
+public class IntHashMap<V> {
+    private static final float LOAD_FACTOR = 0.5f;
+    private static final int MIN_CAPACITY = 16;
+
+    private int[] keys;
+    private Object[] values;
+    private int size;
+    private int shift; // 32 - log2(capacity), for Fibonacci hashing
+
+    public IntHashMap() {
+        this(MIN_CAPACITY);
+    }
+
+    public IntHashMap(int expected) {
+        allocate(capacityFor(expected));
+    }
+
+    private static int capacityFor(int expected) {
+        int cap = MIN_CAPACITY;
+        while (cap * LOAD_FACTOR < expected) {
+            cap <<= 1;
+        }
+        return cap;
+    }
+
+    private void allocate(int cap) {
+        keys = new int[cap];
+        values = new Object[cap];
+        shift = Integer.numberOfLeadingZeros(cap) + 1;
+    }
+
+    private int slot(int key) {
+        // sequential IDs are spread evenly by the golden ratio multiplier
+        return (key * 0x9E3779B9) >>> shift;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(int key) {
+        int mask = keys.length - 1;
+        for (int i = slot(key); values[i] != null; i = (i + 1) & mask) {
+            if (keys[i] == key) {
+                return (V) values[i];
+            }
+        }
+        return null;
+    }
+
+    public boolean containsKey(int key) {
+        return get(key) != null;
+    }
+
+    // Returns the previous value for key, or null
+    @SuppressWarnings("unchecked")
+    public V put(int key, V value) {
+        if (value == null) {
+            throw new IllegalArgumentException("null values are not supported");
+        }
+        int mask = keys.length - 1;
+        int i = slot(key);
+        for (; values[i] != null; i = (i + 1) & mask) {
+            if (keys[i] == key) {
+                V old = (V) values[i];
+                values[i] = value;
+                return old;
+            }
+        }
+        keys[i] = key;
+        values[i] = value;
+        size++;
+        if (size > keys.length * LOAD_FACTOR) {
+            rehash(keys.length << 1);
+        }
+        return null;
+    }
+
+    // Returns the removed value, or null if key wasn't present
+    @SuppressWarnings("unchecked")
+    public V remove(int key) {
+        int mask = keys.length - 1;
+        int i = slot(key);
+        while (values[i] != null && keys[i] != key) {
+            i = (i + 1) & mask;
+        }
+        if (values[i] == null) return null;
+        V old = (V) values[i];
+
+        // Backward-shift: pull later entries of the run into the hole
+        // unless their home slot lies cyclically in (hole, j]
+        int hole = i;
+        int j = i;
+        while (true) {
+            j = (j + 1) & mask;
+            if (values[j] == null) break;
+            int home = slot(keys[j]);
+            boolean stays = hole <= j ? (hole < home && home <= j) : (hole < home || home <= j);
+            if (!stays) {
+                keys[hole] = keys[j];
+                values[hole] = values[j];
+                hole = j;
+            }
+        }
+        values[hole] = null;
+        size--;
+        return old;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    // Grows the table once so that expected entries fit without rehashing
+    public void ensureCapacity(int expected) {
+        int cap = capacityFor(expected);
+        if (cap > keys.length) {
+            rehash(cap);
+        }
+    }
+
+    private void rehash(int newCap) {
+        int[] oldKeys = keys;
+        Object[] oldValues = values;
+        allocate(newCap);
+        int mask = newCap - 1;
+        for (int k = 0; k < oldKeys.length; k++) {
+            if (oldValues[k] != null) {
+                int i = slot(oldKeys[k]);
+                while (values[i] != null) {
+                    i = (i + 1) & mask;
+                }
+                keys[i] = oldKeys[k];
+                values[i] = oldValues[k];
+            }
+        }
+    }
+}
@@ -0,0 +1,25 @@
+// Stock bookkeeping for orders. Every change to a product's stock goes
+// through here, and each one is a single compare-and-swap on that product,
+// so a flash sale on one product only contends on that product and never
+// on a store-wide lock.
+//
+// An order holds UNITS_PER_ORDER units from the moment it's placed; they're
+// given back if the order is cancelled before it ships.
+public class Inventory {
+    public static final int UNITS_PER_ORDER = 1;
+
+    // Reserves the units for one order; false if the product is sold out
+    public static boolean reserve(Product p) {
+        return p.tryReserve(UNITS_PER_ORDER);
+    }
+
+    // Returns a cancelled order's units to stock
+    public static void release(Product p) {
+        p.addStock(UNITS_PER_ORDER);
+    }
+
+    // Adds qty units to stock and returns the new total
+    public static int restock(Product p, int qty) {
+        return p.addStock(qty);
+    }
+}
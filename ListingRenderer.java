@@ -0,0 +1,102 @@
+import java.io.PrintStream;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Builds the product and order listings.
+//
+// Rows are appended to one StringBuilder per session thread that's reused
+// from listing to listing, and write() sends the finished text out in
+// CHUNK-sized pieces. So a listing costs a handful of writes (and, on a
+// socket, a handful of flushes) rather than one println per row.
+// Listings are built under the store locks and written after they're
+// released, as Main does everywhere.
+//
+// Product rows are also cached, since formatting them is the expensive
+// part. A cached row is dropped when its product's price, description or
+// stock changes; products don't change otherwise.
+public class ListingRenderer implements ProductListener {
+    private static final int CHUNK = 8192;
+    // a buffer that grew past this for one huge listing isn't kept around
+    private static final int MAX_KEPT = 1 << 20;
+
+    private static final String PRODUCT_HEADER = String.format("%-20s %-15s %-10s %-15s %-10s %-30s\n",
+            "NAME", "TYPE", "PRICE", "BRAND", "QTY", "DESCRIPTION")
+            + "-----------------------------------------------------------------------------------------------\n";
+
+    private static final ThreadLocal<StringBuilder> buffer = ThreadLocal.withInitial(() -> new StringBuilder(CHUNK));
+
+    // Product doesn't override equals/hashCode, so this is keyed by identity
+    private final ConcurrentHashMap<Product, String> rows = new ConcurrentHashMap<>();
+
+    // This thread's buffer, emptied, to build a listing in
+    public static StringBuilder begin() {
+        StringBuilder sb = buffer.get();
+        sb.setLength(0);
+        return sb;
+    }
+
+    // Appends the product table for the list views; call with the catalog
+    // lock held
+    public void products(StringBuilder sb, String title, List<Product> products) {
+        sb.append('\n').append(title).append('\n').append(PRODUCT_HEADER);
+        for (Product p : products) {
+            sb.append(row(p));
+        }
+    }
+
+    private String row(Product p) {
+        String row = rows.get(p);
+        if (row != null) return row;
+        int qty = p.getQuantityInStock();
+        row = String.format("%-20s %-15s $%-9.2f %-15s %-10d %-30s\n",
+                p.getName(), p.getType(), p.getPrice(), p.getBrand(), qty, p.getDescription());
+        rows.put(p, row);
+        // Stock is changed without the catalog lock. If it changed while
+        // this row was being made, the invalidation may have come before
+        // the put, so check again.
+        if (p.getQuantityInStock() != qty) {
+            rows.remove(p, row);
+        }
+        return row;
+    }
+
+    // Appends one line per order
+    public static void orders(StringBuilder sb, Iterable<Order> orders) {
+        for (Order o : orders) {
+            o.appendTo(sb).append('\n');
+        }
+    }
+
+    // Sends a finished listing to out, CHUNK chars per write
+    public static void write(PrintStream out, StringBuilder sb) {
+        for (int start = 0; start < sb.length(); start += CHUNK) {
+            out.append(sb, start, Math.min(sb.length(), start + CHUNK));
+        }
+        out.flush();
+        if (sb.capacity() > MAX_KEPT) {
+            buffer.remove();
+        } else {
+            sb.setLength(0);
+        }
+    }
+
+    // Drops a removed product's row
+    public void forget(Product p) {
+        rows.remove(p);
+    }
+
+    @Override
+    public void priceChanged(Product p, double oldPrice) {
+        rows.remove(p);
+    }
+
+    @Override
+    public void stockChanged(Product p, int oldQty, int newQty) {
+        rows.remove(p);
+    }
+
+    @Override
+    public void descriptionChanged(Product p, String oldDescription) {
+        rows.remove(p);
+    }
+}
@@ -1,42 +1,166 @@
 import java.util.*;
 import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+import java.util.function.IntSupplier;
+import java.util.function.Supplier;
 
 public class Main {
-    private static Scanner sc = new Scanner(System.in);
+    private static final Scanner console = new Scanner(System.in);
+
+    // Input/output of the session running on the current thread: the console,
+    // or a socket for StoreServer connections
+    private static final ThreadLocal<Scanner> sessionIn = ThreadLocal.withInitial(() -> console);
+    private static final ThreadLocal<PrintStream> sessionOut = ThreadLocal.withInitial(() -> System.out);
+
+    // Sessions run on their own threads (see StoreServer).
+    //  - storeLock guards the catalog trees and the Product fields: read
+    //    lock to look, write lock to change. Stock is the exception, it's
+    //    reserved with a CAS (Inventory) while holding just the read lock.
+    //  - orderLock guards the order structures and Order fields. Changes to
+    //    orders also hold the storeLock read lock, so compaction can stop
+    //    everything by taking the write lock. Take storeLock first.
+    //  - userTable does its own locking.
+    // Never print (possibly to a slow socket) while holding either lock.
+    private static final ReentrantReadWriteLock storeLock = new ReentrantReadWriteLock();
+    private static final Object orderLock = new Object();
 
     // Data structures
-    private static HashTableUser userTable = new HashTableUser(20); // for Customers, Employees, Managers
+    private static ConcurrentHashTableUser userTable = new ConcurrentHashTableUser(20); // for Customers, Employees, Managers
     private static ProductBSTByName bstByName = new ProductBSTByName();
     private static ProductBSTByType bstByType = new ProductBSTByType();
-    private static OrderHeap orderHeap = new OrderHeap();
-
-    // LinkedLists for shipped/unshipped orders (per user or global)
-    // We'll store shipped orders globally, but you could also store them per user if needed
-    private static OrderLinkedList shippedOrders = new OrderLinkedList();
+    // Word -> products, for keyword search over name, brand and description
+    private static ProductTextIndex textIndex = new ProductTextIndex();
+    // (price, name) -> product, for price ranges and cheapest/priciest lists
+    private static PriceIndex priceIndex = new PriceIndex();
+    // Brand -> products, for multi-field queries (see ProductQuery)
+    private static BrandIndex brandIndex = new BrandIndex();
+    // Builds listings in a reused buffer and caches product rows
+    private static ListingRenderer renderer = new ListingRenderer();
+    static {
+        // these follow price, stock and description edits on their own
+        Product.addListener(bstByName);
+        Product.addListener(bstByType);
+        Product.addListener(textIndex);
+        Product.addListener(priceIndex);
+        Product.addListener(renderer);
+    }
+    // Unshipped orders by priority (one FIFO bucket per shipping method)
+    private static OrderBucketQueue orderQueue = new OrderBucketQueue();
 
     // In-memory list of all orders (for searching by ID, or you can store them in a separate DS)
+    // Cancelled orders stay here until the next compaction drops them;
+    // ordersByID is what says whether an order still exists
     private static ArrayList<Order> allOrders = new ArrayList<>();
+    // Order ID -> Order, so lookups by ID don't scan allOrders
+    private static IntHashMap<Order> ordersByID = new IntHashMap<>();
+    // Username -> that customer's shipped / unshipped orders
+    private static CustomerOrderIndex ordersByCustomer = new CustomerOrderIndex();
+
+    // Binary snapshot of the store; the text files are kept as an
+    // import/export format and rewritten on exit
+    private static final String SNAPSHOT_FILE = "store.snap";
+
+    // Every mutation is journaled as it happens; the snapshot is only
+    // rewritten when the journal is compacted
+    private static final String JOURNAL_FILE = "journal.log";
+    private static final String JOURNAL_OLD = "journal.old"; // being compacted
+    private static final int COMPACT_THRESHOLD = 1000;       // entries
+    // journalEntry's ticket for an entry the journal wouldn't take
+    private static final long NOT_JOURNALED = Long.MAX_VALUE;
+    private static StoreJournal journal;
+    private static Thread compactor;
+
+    // Hands out new order IDs; the mark file keeps them unique across restarts
+    private static final String ORDER_ID_FILE = "orderid.hwm";
+    private static final OrderIdAllocator orderIds = new OrderIdAllocator(new File(ORDER_ID_FILE));
+
+    // Names offered when a product name isn't found
+    private static final int SUGGESTIONS = 5;
+    // Products per page of a listing
+    private static final int PAGE_SIZE = 50;
 
     public static void main(String[] args) {
-        // 1) Load data from files
-        loadUsers("customers.txt", "employees.txt", "managers.txt");
-        loadProducts("products.txt");
-        loadOrders("orders.txt");
+        // "--import" reloads the store from the text files instead of the snapshot
+        ArrayList<String> rest = new ArrayList<>(Arrays.asList(args));
+        boolean importText = rest.remove("--import");
+
+        // 1) Load the last snapshot, then replay the journal on top
+        loadStore(importText);
+        openJournal();
+        try {
+            orderIds.resume();
+        } catch (IOException e) {
+            out().println("Could not read order IDs: " + e.getMessage());
+        }
+
+        // "--server [port]" serves the menus over TCP instead of the console
+        if (!rest.isEmpty() && rest.get(0).equals("--server")) {
+            int port = rest.size() > 1 ? Integer.parseInt(rest.get(1)) : StoreServer.DEFAULT_PORT;
+            Runtime.getRuntime().addShutdownHook(new Thread(Main::shutdown));
+            try {
+                new StoreServer(port).serve();
+            } catch (IOException e) {
+                out().println("Server stopped: " + e.getMessage());
+            }
+            return;
+        }
+
+        storeMenu();
+        shutdown();
+        out().println("Thank you for using the Musical Instrument Store system!");
+    }
+
+    // On exit, fold the journal into a fresh snapshot and text files
+    private static void shutdown() {
+        compact(true, true);
+        closeJournal();
+    }
+
+    // Runs one remote session on the calling thread, reading and writing
+    // through the given streams instead of the console
+    static void runSession(Scanner in, PrintStream out) {
+        sessionIn.set(in);
+        sessionOut.set(out);
+        try {
+            storeMenu();
+            out().println("Goodbye!");
+        } catch (NoSuchElementException e) {
+            // client hung up
+        } finally {
+            sessionIn.remove();
+            sessionOut.remove();
+        }
+    }
+
+    private static Scanner in() {
+        return sessionIn.get();
+    }
+
+    private static PrintStream out() {
+        return sessionOut.get();
+    }
 
+    // Top-level menu, until the user picks Exit
+    private static void storeMenu() {
         boolean exitProgram = false;
         while (!exitProgram) {
-            System.out.println("\nWelcome to the Musical Instrument Store!");
-            System.out.println("1) Login as Customer");
-            System.out.println("2) Create New Customer Account");
-            System.out.println("3) Login as Employee");
-            System.out.println("4) Login as Manager");
-            System.out.println("5) Login as Guest");
-            System.out.println("6) Exit");
-            System.out.print("Choose an option: ");
+            out().println("\nWelcome to the Musical Instrument Store!");
+            out().println("1) Login as Customer");
+            out().println("2) Create New Customer Account");
+            out().println("3) Login as Employee");
+            out().println("4) Login as Manager");
+            out().println("5) Login as Guest");
+            out().println("6) Exit");
+            out().print("Choose an option: ");
 
             int choice = -1;
             try {
-                choice = Integer.parseInt(sc.nextLine());
+                choice = Integer.parseInt(in().nextLine());
             } catch (NumberFormatException e) {
                 // ignore, will loop
             }
@@ -61,199 +185,485 @@ public class Main {
                     exitProgram = true;
                     break;
                 default:
-                    System.out.println("Invalid option. Try again.");
+                    out().println("Invalid option. Try again.");
                     break;
             }
         }
 
-        // 5) On exit, write updated data to files
-        saveUsers("customers.txt", "employees.txt", "managers.txt");
-        saveProducts("products.txt");
-        saveOrders("orders.txt");
-
-        System.out.println("Thank you for using the Musical Instrument Store system!");
     }
 
     // --------------------------
     // Loading / Saving Data
     // --------------------------
-    private static void loadUsers(String customersFile, String employeesFile, String managersFile) {
-        // Load customers
-        try (BufferedReader br = new BufferedReader(new FileReader(customersFile))) {
-            String line;
-            while ((line = br.readLine()) != null) {
-                if (line.startsWith("#") || line.trim().isEmpty()) continue;
-                // Format: username,password,firstName,lastName
-                String[] parts = line.split(",");
-                if (parts.length == 4) {
-                    Customer c = new Customer(parts[0], parts[1], parts[2], parts[3]);
-                    userTable.insert(c.getUsername(), c);
-                }
-            }
-        } catch (IOException e) {
-            System.out.println("Could not load customers: " + e.getMessage());
-        }
-
-        // Load employees
-        try (BufferedReader br = new BufferedReader(new FileReader(employeesFile))) {
-            String line;
-            while ((line = br.readLine()) != null) {
-                if (line.startsWith("#") || line.trim().isEmpty()) continue;
-                // Format: username,password,firstName,lastName
-                String[] parts = line.split(",");
-                if (parts.length == 4) {
-                    Employee emp = new Employee(parts[0], parts[1], parts[2], parts[3]);
-                    userTable.insert(emp.getUsername(), emp);
-                }
-            }
-        } catch (IOException e) {
-            System.out.println("Could not load employees: " + e.getMessage());
-        }
-
-        // Load managers
-        try (BufferedReader br = new BufferedReader(new FileReader(managersFile))) {
-            String line;
-            while ((line = br.readLine()) != null) {
-                if (line.startsWith("#") || line.trim().isEmpty()) continue;
-                // Format: username,password,firstName,lastName
-                String[] parts = line.split(",");
-                if (parts.length == 4) {
-                    Manager mgr = new Manager(parts[0], parts[1], parts[2], parts[3]);
-                    userTable.insert(mgr.getUsername(), mgr);
-                }
+
+    // The binary snapshot is the store; the text files are only read when
+    // there's no snapshot yet, or when importText asks for them
+    static void loadStore(boolean importText) {
+        File snap = new File(SNAPSHOT_FILE);
+        if (!importText && snap.exists()) {
+            warnIfEdited(snap);
+            if (loadSnapshot(SNAPSHOT_FILE)) {
+                return;
             }
-        } catch (IOException e) {
-            System.out.println("Could not load managers: " + e.getMessage());
-        }
-    }
-
-    private static void loadProducts(String productsFile) {
-        try (BufferedReader br = new BufferedReader(new FileReader(productsFile))) {
-            String line;
-            while ((line = br.readLine()) != null) {
-                if (line.startsWith("#") || line.trim().isEmpty()) continue;
-                // Format: instrumentName, instrumentType, price, brand, quantityInStock, description
-                String[] parts = line.split(",");
-                if (parts.length == 6) {
-                    String name = parts[0];
-                    String type = parts[1];
-                    double price = Double.parseDouble(parts[2]);
-                    String brand = parts[3];
-                    int qty = Integer.parseInt(parts[4]);
-                    String desc = parts[5];
-
-                    Product p = new Product(name, type, price, brand, qty, desc);
-                    bstByName.insert(p);
-                    bstByType.insert(p);
-                }
+        }
+        loadTextFiles(ForkJoinPool.commonPool(), "customers.txt", "employees.txt", "managers.txt",
+                "products.txt", "orders.txt");
+    }
+
+    // Hand edits to a text file don't reach the store by themselves, so say so
+    private static void warnIfEdited(File snap) {
+        for (String text : new String[] {"customers.txt", "employees.txt", "managers.txt",
+                                         "products.txt", "orders.txt"}) {
+            if (new File(text).lastModified() > snap.lastModified()) {
+                out().println("Warning: " + text + " changed after " + SNAPSHOT_FILE
+                        + " was written and is being ignored; start with --import to load the text files");
             }
+        }
+    }
+
+    static boolean loadSnapshot(String snapshotFile) {
+        StoreSnapshot snap;
+        try {
+            snap = StoreSnapshot.read(new File(snapshotFile));
         } catch (IOException e) {
-            System.out.println("Could not load products: " + e.getMessage());
-        }
-    }
-
-    private static void loadOrders(String ordersFile) {
-        try (BufferedReader br = new BufferedReader(new FileReader(ordersFile))) {
-            String line;
-            while ((line = br.readLine()) != null) {
-                if (line.startsWith("#") || line.trim().isEmpty()) continue;
-                // Format: orderID,username,productName,shippingMethod
-                String[] parts = line.split(",");
-                if (parts.length == 4) {
-                    int orderID = Integer.parseInt(parts[0]);
-                    String username = parts[1];
-                    String productName = parts[2];
-                    String shippingStr = parts[3];
-
-                    Order.ShippingMethod method = Order.ShippingMethod.valueOf(shippingStr.toUpperCase());
-                    Order o = new Order(orderID, username, productName, method);
-                    allOrders.add(o);
-                    // Put it in the heap as unshipped
-                    orderHeap.insert(o);
-                }
-            }
+            out().println("Could not load snapshot: " + e.getMessage());
+            return false;
+        }
+        addAll(snap.users, snap.products, snap.orders);
+        return true;
+    }
+
+    private static boolean saveSnapshot(String snapshotFile, List<User> users, List<Product> products,
+                                        List<Order> orders) {
+        try {
+            StoreSnapshot.write(new File(snapshotFile), users, products, orders);
+            return true;
         } catch (IOException e) {
-            System.out.println("Could not load orders: " + e.getMessage());
+            out().println("Error saving snapshot: " + e.getMessage());
+            return false;
         }
     }
 
-    private static void saveUsers(String customersFile, String employeesFile, String managersFile) {
-        // For simplicity, we will iterate through the entire hash table
-        // and separate out customers, employees, managers based on object type
+    // Empties every in-memory structure (used by StartupBenchmark between runs)
+    static void resetStore() {
+        userTable = new ConcurrentHashTableUser(20);
+        Product.removeListener(bstByName);
+        Product.removeListener(bstByType);
+        Product.removeListener(textIndex);
+        Product.removeListener(priceIndex);
+        Product.removeListener(renderer);
+        bstByName = new ProductBSTByName();
+        bstByType = new ProductBSTByType();
+        textIndex = new ProductTextIndex();
+        priceIndex = new PriceIndex();
+        brandIndex = new BrandIndex();
+        renderer = new ListingRenderer();
+        Product.addListener(bstByName);
+        Product.addListener(bstByType);
+        Product.addListener(textIndex);
+        Product.addListener(priceIndex);
+        Product.addListener(renderer);
+        orderQueue = new OrderBucketQueue();
+        allOrders = new ArrayList<>();
+        ordersByID = new IntHashMap<>();
+        ordersByCustomer = new CustomerOrderIndex();
+    }
+
+    // Reads and parses the text files in parallel on pool, then merges the
+    // records into the store on this thread
+    static void loadTextFiles(ForkJoinPool pool, String customersFile, String employeesFile,
+                              String managersFile, String productsFile, String ordersFile) {
+        ParallelLoader loaded = ParallelLoader.load(pool, customersFile, employeesFile, managersFile,
+                productsFile, ordersFile);
+        for (String error : loaded.errors) {
+            out().println(error);
+        }
+        addAll(loaded.users, loaded.products, loaded.orders);
+    }
+
+    private static boolean saveUsers(String customersFile, String employeesFile, String managersFile,
+                                     List<User> allUsers) {
+        // Separate out customers, employees, managers based on object type
         ArrayList<Customer> customers = new ArrayList<>();
         ArrayList<Employee> employees = new ArrayList<>();
         ArrayList<Manager> managers = new ArrayList<>();
 
-        // Gather from hash table
-        ArrayList<User> allUsers = userTable.getAllUsers();
         for (User u : allUsers) {
+            // Manager extends Employee, so it has to be checked first
             if (u instanceof Customer) {
                 customers.add((Customer) u);
-            } else if (u instanceof Employee) {
-                employees.add((Employee) u);
             } else if (u instanceof Manager) {
                 managers.add((Manager) u);
+            } else if (u instanceof Employee) {
+                employees.add((Employee) u);
             }
         }
 
-        // Save customers
-        try (PrintWriter pw = new PrintWriter(new FileWriter(customersFile))) {
+        return saveUserFile(customersFile, "customers", customers)
+                & saveUserFile(employeesFile, "employees", employees)
+                & saveUserFile(managersFile, "managers", managers);
+    }
+
+    private static boolean saveUserFile(String file, String what, List<? extends User> users) {
+        File tmp = new File(file + ".tmp");
+        try (PrintWriter pw = new PrintWriter(new FileWriter(tmp))) {
             pw.println("# Format: username,password,firstName,lastName");
-            for (Customer c : customers) {
-                pw.println(c.getUsername() + "," + c.getPassword() + ","
-                        + c.getFirstName() + "," + c.getLastName());
+            for (User u : users) {
+                pw.println(CsvTokenizer.quote(u.getUsername()) + "," + CsvTokenizer.quote(u.getPassword()) + ","
+                        + CsvTokenizer.quote(u.getFirstName()) + "," + CsvTokenizer.quote(u.getLastName()));
             }
+            if (pw.checkError()) throw new IOException("write to " + tmp + " failed");
         } catch (IOException e) {
-            System.out.println("Error saving customers: " + e.getMessage());
+            out().println("Error saving " + what + ": " + e.getMessage());
+            return false;
         }
+        return replaceFile(tmp, file);
+    }
 
-        // Save employees
-        try (PrintWriter pw = new PrintWriter(new FileWriter(employeesFile))) {
-            pw.println("# Format: username,password,firstName,lastName");
-            for (Employee emp : employees) {
-                pw.println(emp.getUsername() + "," + emp.getPassword() + ","
-                        + emp.getFirstName() + "," + emp.getLastName());
+    // products are expected in name order (from bstByName.inOrder)
+    private static boolean saveProducts(String productsFile, List<Product> products) {
+        File tmp = new File(productsFile + ".tmp");
+        try (PrintWriter pw = new PrintWriter(new FileWriter(tmp))) {
+            pw.println("# Format: instrumentName, instrumentType, price, brand, quantityInStock, description");
+            for (Product p : products) {
+                // descriptions often contain commas, so quote where needed
+                pw.println(CsvTokenizer.quote(p.getName()) + "," + CsvTokenizer.quote(p.getType()) + ","
+                        + p.getPrice() + "," + CsvTokenizer.quote(p.getBrand()) + ","
+                        + p.getQuantityInStock() + "," + CsvTokenizer.quote(p.getDescription()));
             }
+            if (pw.checkError()) throw new IOException("write to " + tmp + " failed");
         } catch (IOException e) {
-            System.out.println("Error saving employees: " + e.getMessage());
+            out().println("Error saving products: " + e.getMessage());
+            return false;
         }
+        return replaceFile(tmp, productsFile);
+    }
 
-        // Save managers
-        try (PrintWriter pw = new PrintWriter(new FileWriter(managersFile))) {
-            pw.println("# Format: username,password,firstName,lastName");
-            for (Manager mgr : managers) {
-                pw.println(mgr.getUsername() + "," + mgr.getPassword() + ","
-                        + mgr.getFirstName() + "," + mgr.getLastName());
+    private static boolean saveOrders(String ordersFile, List<Order> orders) {
+        File tmp = new File(ordersFile + ".tmp");
+        try (PrintWriter pw = new PrintWriter(new FileWriter(tmp))) {
+            pw.println("# Format: orderID,username,productName,shippingMethod,shipped");
+            for (Order o : orders) {
+                pw.println(o.getOrderID() + "," + CsvTokenizer.quote(o.getUsername()) + ","
+                        + CsvTokenizer.quote(o.getProductName()) + "," + o.getShippingMethod() + "," + o.isShipped());
             }
+            if (pw.checkError()) throw new IOException("write to " + tmp + " failed");
         } catch (IOException e) {
-            System.out.println("Error saving managers: " + e.getMessage());
+            out().println("Error saving orders: " + e.getMessage());
+            return false;
         }
+        return replaceFile(tmp, ordersFile);
     }
 
-    private static void saveProducts(String productsFile) {
-        // We'll do an in-order traversal by name to ensure we don't get duplicates
-        ArrayList<Product> products = new ArrayList<>();
-        bstByName.inOrder(products);
+    // Swaps a fully written temp file in for target, so a crash mid-save
+    // never leaves a half-written data file
+    private static boolean replaceFile(File tmp, String target) {
+        try {
+            Files.move(tmp.toPath(), new File(target).toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return true;
+        } catch (IOException e) {
+            out().println("Error saving " + target + ": " + e.getMessage());
+            return false;
+        }
+    }
 
-        try (PrintWriter pw = new PrintWriter(new FileWriter(productsFile))) {
-            pw.println("# Format: instrumentName, instrumentType, price, brand, quantityInStock, description");
-            for (Product p : products) {
-                pw.println(p.getName() + "," + p.getType() + "," + p.getPrice() + ","
-                        + p.getBrand() + "," + p.getQuantityInStock() + "," + p.getDescription());
-            }
+    // --------------------------
+    // Journal
+    // --------------------------
+    private static void openJournal() {
+        int replayed = 0;
+        try {
+            // journal.old only survives if a compaction didn't finish; its
+            // entries are older than the ones in journal.log
+            replayed += StoreJournal.replay(new File(JOURNAL_OLD), Main::applyJournalEntry);
+            replayed += StoreJournal.replay(new File(JOURNAL_FILE), Main::applyJournalEntry);
+            journal = new StoreJournal(new File(JOURNAL_FILE));
+        } catch (IOException e) {
+            out().println("Could not open journal: " + e.getMessage());
+            return;
+        }
+        if (replayed > 0) {
+            compact(false, false);
+        }
+    }
+
+    private static void closeJournal() {
+        if (journal == null) return;
+        try {
+            journal.close();
         } catch (IOException e) {
-            System.out.println("Error saving products: " + e.getMessage());
+            out().println("Error closing journal: " + e.getMessage());
         }
     }
 
-    private static void saveOrders(String ordersFile) {
-        try (PrintWriter pw = new PrintWriter(new FileWriter(ordersFile))) {
-            pw.println("# Format: orderID,username,productName,shippingMethod");
-            for (Order o : allOrders) {
-                pw.println(o.getOrderID() + "," + o.getUsername() + "," + o.getProductName() + "," + o.getShippingMethod());
+    // Queues one mutation in the journal and returns its ticket for commit().
+    // Call it while still holding the lock the mutation was made under, so
+    // entries land in the journal in the order the changes happened.
+    private static long journalEntry(String... fields) {
+        if (journal == null) return 0;
+        try {
+            return journal.append(fields);
+        } catch (IOException e) {
+            // reported by commit(), once the caller has let go of its locks
+            return NOT_JOURNALED;
+        }
+    }
+
+    // Waits for the group commit that covers ticket (and every entry before
+    // it). Call after releasing the store locks so other sessions can keep
+    // going meanwhile. Returns false, after telling the user, if the entry
+    // couldn't be written; callers then skip their success message.
+    private static boolean commit(long ticket) {
+        if (journal == null || ticket == 0) return true;
+        try {
+            if (ticket == NOT_JOURNALED) throw new IOException("journal is closed");
+            journal.awaitDurable(ticket);
+        } catch (IOException e) {
+            out().println("Could not write journal: " + e.getMessage());
+            out().println("The change was made but could not be saved.");
+            return false;
+        }
+        if (journal.entryCount() >= COMPACT_THRESHOLD) {
+            compact(false, false);
+        }
+        return true;
+    }
+
+    // Folds the journal into a new snapshot (and the text files too, if
+    // exportText is set). The state is captured and the journal rolled over
+    // on this thread; the files are written on a background thread unless
+    // wait is set.
+    private static synchronized void compact(boolean wait, boolean exportText) {
+        if (compactor != null && compactor.isAlive()) {
+            if (!wait) return;
+            try {
+                compactor.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+
+        // The write lock keeps any store mutation (and its journal entry)
+        // from landing between the capture and the rollover
+        ArrayList<Product> products = new ArrayList<>();
+        ArrayList<Order> orders;
+        storeLock.writeLock().lock();
+        try {
+            bstByName.inOrder(products);
+            // Stock has to match the captured orders exactly (replaying an
+            // ORDER takes stock again), so freeze it in copies
+            for (int i = 0; i < products.size(); i++) {
+                Product p = products.get(i);
+                products.set(i, new Product(p.getName(), p.getType(), p.getPrice(), p.getBrand(),
+                        p.getQuantityInStock(), p.getDescription()));
+            }
+            synchronized (orderLock) {
+                // drop the cancelled orders left behind by cancelOrder
+                ArrayList<Order> live = new ArrayList<>(ordersByID.size());
+                for (Order o : allOrders) {
+                    if (ordersByID.get(o.getOrderID()) == o) {
+                        live.add(o);
+                    }
+                }
+                allOrders = live;
+                orders = new ArrayList<>(live);
+            }
+            if (journal != null) {
+                journal.rollover(new File(JOURNAL_OLD));
             }
         } catch (IOException e) {
-            System.out.println("Error saving orders: " + e.getMessage());
+            out().println("Could not compact journal: " + e.getMessage());
+            return;
+        } finally {
+            storeLock.writeLock().unlock();
+        }
+        // Users are collected after the rollover instead: a user is added
+        // before its entry is journaled, so every user whose entry went to
+        // journal.old is already in the table
+        ArrayList<User> users = new ArrayList<>(userTable.size());
+        for (User u : userTable) {
+            users.add(u);
+        }
+
+        // Product and Order fields are read after the capture, so a snapshot
+        // can include changes that are also in the new journal. That's fine
+        // because replaying an entry twice has no extra effect.
+        Runnable task = () -> {
+            boolean ok = true;
+            if (exportText) {
+                // text first, so the snapshot ends up the newer file
+                ok = saveUsers("customers.txt", "employees.txt", "managers.txt", users)
+                        & saveProducts("products.txt", products)
+                        & saveOrders("orders.txt", orders);
+            }
+            ok &= saveSnapshot(SNAPSHOT_FILE, users, products, orders);
+            // Only drop the old entries once the snapshot holds them
+            if (ok) {
+                new File(JOURNAL_OLD).delete();
+            }
+        };
+        if (wait) {
+            task.run();
+        } else {
+            compactor = new Thread(task, "journal-compactor");
+            compactor.start();
+        }
+    }
+
+    // Re-applies one journaled mutation. Every entry type is idempotent, so
+    // entries that the snapshot already reflects can be replayed safely.
+    private static void applyJournalEntry(String[] f) {
+        try {
+            switch (f[0]) {
+                case "CUST":
+                    userTable.insert(f[1], new Customer(f[1], f[2], f[3], f[4]));
+                    break;
+                case "PADD":
+                    if (bstByName.search(f[1]) == null) {
+                        addProduct(new Product(f[1], f[2], Double.parseDouble(f[3]), f[4],
+                                Integer.parseInt(f[5]), f[6]));
+                    }
+                    break;
+                case "PPRICE": {
+                    Product p = bstByName.search(f[1]);
+                    if (p != null) p.setPrice(Double.parseDouble(f[2]));
+                    break;
+                }
+                case "PDESC": {
+                    Product p = bstByName.search(f[1]);
+                    if (p != null) p.setDescription(f[2]);
+                    break;
+                }
+                case "PSTOCK": {
+                    // stock is journaled as the new total, not the amount added
+                    Product p = bstByName.search(f[1]);
+                    if (p != null) p.setQuantityInStock(Integer.parseInt(f[2]));
+                    break;
+                }
+                case "PREM": {
+                    Product p = bstByName.search(f[1]);
+                    if (p != null) deleteProduct(p);
+                    break;
+                }
+                case "ORDER": {
+                    int id = Integer.parseInt(f[1]);
+                    if (ordersByID.get(id) == null) {
+                        addOrder(new Order(id, f[2], f[3], Order.ShippingMethod.valueOf(f[4])));
+                        // the order was accepted, so take its stock even if
+                        // that can't be done in full any more
+                        Product p = bstByName.search(f[3]);
+                        if (p != null) Inventory.reserve(p);
+                    }
+                    break;
+                }
+                case "CANCEL": {
+                    Order o = ordersByID.get(Integer.parseInt(f[1]));
+                    if (o != null && !o.isShipped()) {
+                        cancelOrder(o);
+                    }
+                    break;
+                }
+                case "SHIP": {
+                    // one entry per ship, listing every order in the batch
+                    for (int i = 1; i < f.length; i++) {
+                        Order o = ordersByID.get(Integer.parseInt(f[i]));
+                        if (o != null && !o.isShipped()) {
+                            orderQueue.removeById(o.getOrderID());
+                            markShipped(o);
+                        }
+                    }
+                    break;
+                }
+                default:
+                    out().println("Skipping unknown journal entry: " + f[0]);
+            }
+        } catch (RuntimeException e) {
+            out().println("Skipping bad journal entry " + String.join(",", f) + ": " + e);
+        }
+    }
+
+    // --------------------------
+    // Store updates (shared by loading, journal replay and the menus)
+    // --------------------------
+    private static void addAll(List<User> users, List<Product> products, List<Order> orders) {
+        for (User u : users) {
+            userTable.insert(u.getUsername(), u);
+        }
+        addProducts(products);
+        // Size the ID index once for the whole batch
+        ordersByID.ensureCapacity(allOrders.size() + orders.size());
+        for (Order o : orders) {
+            addOrder(o);
+        }
+    }
+
+    private static void addProduct(Product p) {
+        bstByName.insert(p);
+        bstByType.insert(p);
+        textIndex.add(p);
+        priceIndex.add(p);
+        brandIndex.add(p);
+    }
+
+    // Bulk-builds both trees from a batch; returns the products that weren't
+    // already listed, in name order
+    private static List<Product> addProducts(List<Product> products) {
+        ArrayList<Product> added = bstByName.bulkLoad(products);
+        bstByType.bulkLoad(added);
+        for (Product p : added) {
+            textIndex.add(p);
+            priceIndex.add(p);
+            brandIndex.add(p);
+        }
+        return added;
+    }
+
+    private static void deleteProduct(Product p) {
+        bstByName.remove(p.getName());
+        bstByType.remove(p.getType(), p.getName());
+        textIndex.remove(p);
+        priceIndex.remove(p);
+        brandIndex.remove(p);
+        renderer.forget(p);
+    }
+
+    private static void addOrder(Order o) {
+        orderIds.observe(o.getOrderID());
+        allOrders.add(o);
+        ordersByID.put(o.getOrderID(), o);
+        ordersByCustomer.add(o);
+        if (!o.isShipped()) {
+            orderQueue.insert(o);
+        }
+    }
+
+    // Drops an unshipped order from every structure and puts its stock back
+    private static void cancelOrder(Order o) {
+        orderQueue.removeById(o.getOrderID());
+        ordersByID.remove(o.getOrderID());
+        ordersByCustomer.removeUnshipped(o);
+        // not removed from allOrders: that's a scan of every order, so
+        // compaction skips it instead
+        Product p = bstByName.search(o.getProductName());
+        if (p != null) {
+            Inventory.release(p);
+        }
+    }
+
+    // o must already be out of orderQueue
+    private static void markShipped(Order o) {
+        o.setShipped(true);
+        ordersByCustomer.markShipped(o);
+    }
+
+    private static boolean productExists(String name) {
+        storeLock.readLock().lock();
+        try {
+            return bstByName.search(name) != null;
+        } finally {
+            storeLock.readLock().unlock();
         }
     }
 
@@ -261,71 +671,90 @@ public class Main {
     // Menu Handling
     // --------------------------
     private static void handleCustomerLogin() {
-        System.out.print("Enter username: ");
-        String user = sc.nextLine();
-        System.out.print("Enter password: ");
-        String pass = sc.nextLine();
+        out().print("Enter username: ");
+        String user = in().nextLine();
+        out().print("Enter password: ");
+        String pass = in().nextLine();
 
         User u = userTable.search(user);
         if (u != null && u instanceof Customer && u.getPassword().equals(pass)) {
-            System.out.println("Login successful. Welcome, " + ((Customer) u).getFirstName() + "!");
+            out().println("Login successful. Welcome, " + ((Customer) u).getFirstName() + "!");
             customerMenu((Customer) u);
         } else {
-            System.out.println("Invalid credentials or not a customer.");
+            out().println("Invalid credentials or not a customer.");
         }
     }
 
     private static void createNewCustomer() {
-        System.out.print("Choose a username: ");
-        String user = sc.nextLine();
+        out().print("Choose a username: ");
+        String user = in().nextLine();
         if (userTable.search(user) != null) {
-            System.out.println("That username is already taken!");
+            out().println("That username is already taken!");
             return;
         }
-        System.out.print("Choose a password: ");
-        String pass = sc.nextLine();
-        System.out.print("First name: ");
-        String fName = sc.nextLine();
-        System.out.print("Last name: ");
-        String lName = sc.nextLine();
+        out().print("Choose a password: ");
+        String pass = in().nextLine();
+        out().print("First name: ");
+        String fName = in().nextLine();
+        out().print("Last name: ");
+        String lName = in().nextLine();
 
         Customer c = new Customer(user, pass, fName, lName);
-        userTable.insert(c.getUsername(), c);
-        System.out.println("Account created successfully!");
+        long ticket;
+        // The read lock keeps the entry from landing during a compaction's
+        // journal rollover, like every other change
+        storeLock.readLock().lock();
+        try {
+            // someone else may have taken it while we were typing
+            if (userTable.insertIfAbsent(c.getUsername(), c) != null) {
+                ticket = -1;
+            } else {
+                ticket = journalEntry("CUST", user, pass, fName, lName);
+            }
+        } finally {
+            storeLock.readLock().unlock();
+        }
+        if (ticket == -1) {
+            out().println("That username is already taken!");
+            return;
+        }
+        if (commit(ticket)) {
+            out().println("Account created successfully!");
+        }
     }
 
     private static void handleEmployeeLogin() {
-        System.out.print("Enter username: ");
-        String user = sc.nextLine();
-        System.out.print("Enter password: ");
-        String pass = sc.nextLine();
+        out().print("Enter username: ");
+        String user = in().nextLine();
+        out().print("Enter password: ");
+        String pass = in().nextLine();
 
         User u = userTable.search(user);
         if (u != null && u instanceof Employee && u.getPassword().equals(pass)) {
-            System.out.println("Login successful. Welcome, " + ((Employee) u).getFirstName() + "!");
+            out().println("Login successful. Welcome, " + ((Employee) u).getFirstName() + "!");
             employeeMenu((Employee) u);
         } else {
-            System.out.println("Invalid credentials or not an employee.");
+            out().println("Invalid credentials or not an employee.");
         }
     }
 
     private static void handleManagerLogin() {
-        System.out.print("Enter username: ");
-        String user = sc.nextLine();
-        System.out.print("Enter password: ");
-        String pass = sc.nextLine();
+        out().print("Enter username: ");
+        String user = in().nextLine();
+        out().print("Enter password: ");
+        String pass = in().nextLine();
 
         User u = userTable.search(user);
         if (u != null && u instanceof Manager && u.getPassword().equals(pass)) {
-            System.out.println("Login successful. Welcome, " + ((Manager) u).getFirstName() + "!");
+            out().println("Login successful. Welcome, " + ((Manager) u).getFirstName() + "!");
             managerMenu((Manager) u);
         } else {
-            System.out.println("Invalid credentials or not a manager.");
+            out().println("Invalid credentials or not a manager.");
         }
     }
 
     private static void handleGuestSession() {
-        System.out.println("Welcome, Guest! You have limited access. You can search/list products, but cannot order.");
+        out().println("Welcome, Guest! You have limited access. You can search/list products, but cannot order.");
         guestMenu();
     }
 
@@ -335,20 +764,24 @@ public class Main {
     private static void customerMenu(Customer c) {
         boolean exit = false;
         while (!exit) {
-            System.out.println("\n-- Customer Menu --");
-            System.out.println("1) Search for a product by Name (Primary Key)");
-            System.out.println("2) Search for a product by Type (Secondary Key)");
-            System.out.println("3) List all products (by Name)");
-            System.out.println("4) List all products (by Type)");
-            System.out.println("5) Place an Order");
-            System.out.println("6) View Purchases (Shipped)");
-            System.out.println("7) View Purchases (Unshipped)");
-            System.out.println("8) Quit and Save");
-
-            System.out.print("Choose an option: ");
+            out().println("\n-- Customer Menu --");
+            out().println("1) Search for a product by Name (Primary Key)");
+            out().println("2) Search for a product by Type (Secondary Key)");
+            out().println("3) List all products (by Name)");
+            out().println("4) List all products (by Type)");
+            out().println("5) Place an Order");
+            out().println("6) View Purchases (Shipped)");
+            out().println("7) View Purchases (Unshipped)");
+            out().println("8) Cancel an Order");
+            out().println("9) Search for products by keyword");
+            out().println("10) Browse products by price");
+            out().println("11) Search products by several fields");
+            out().println("12) Quit and Save");
+
+            out().print("Choose an option: ");
             int choice = -1;
             try {
-                choice = Integer.parseInt(sc.nextLine());
+                choice = Integer.parseInt(in().nextLine());
             } catch (NumberFormatException e) {
                 // ignore
             }
@@ -376,10 +809,22 @@ public class Main {
                     viewUnshippedOrders(c);
                     break;
                 case 8:
+                    cancelOrder(c);
+                    break;
+                case 9:
+                    searchProductsByKeyword();
+                    break;
+                case 10:
+                    browseByPrice();
+                    break;
+                case 11:
+                    queryProducts();
+                    break;
+                case 12:
                     exit = true;
                     break;
                 default:
-                    System.out.println("Invalid option.");
+                    out().println("Invalid option.");
                     break;
             }
         }
@@ -391,18 +836,20 @@ public class Main {
     private static void employeeMenu(Employee e) {
         boolean exit = false;
         while (!exit) {
-            System.out.println("\n-- Employee Menu --");
-            System.out.println("1) Search for an Order by Order ID");
-            System.out.println("2) Search for an Order by Customer Name");
-            System.out.println("3) View Order with Highest Priority");
-            System.out.println("4) View All Orders Sorted by Priority");
-            System.out.println("5) Ship an Order");
-            System.out.println("6) Quit and Save");
-
-            System.out.print("Choose an option: ");
+            out().println("\n-- Employee Menu --");
+            out().println("1) Search for an Order by Order ID");
+            out().println("2) Search for an Order by Customer Name");
+            out().println("3) View Order with Highest Priority");
+            out().println("4) View All Orders Sorted by Priority");
+            out().println("5) Ship an Order");
+            out().println("6) Ship a Batch of Orders");
+            out().println("7) Ship All Orders at or Above a Priority");
+            out().println("8) Quit and Save");
+
+            out().print("Choose an option: ");
             int choice = -1;
             try {
-                choice = Integer.parseInt(sc.nextLine());
+                choice = Integer.parseInt(in().nextLine());
             } catch (NumberFormatException ex) {
                 // ignore
             }
@@ -424,10 +871,16 @@ public class Main {
                     shipAnOrder();
                     break;
                 case 6:
+                    shipOrderBatch();
+                    break;
+                case 7:
+                    shipOrdersByPriority();
+                    break;
+                case 8:
                     exit = true;
                     break;
                 default:
-                    System.out.println("Invalid option.");
+                    out().println("Invalid option.");
                     break;
             }
         }
@@ -439,17 +892,19 @@ public class Main {
     private static void managerMenu(Manager m) {
         boolean exit = false;
         while (!exit) {
-            System.out.println("\n-- Manager Menu --");
-            System.out.println("1) (Manager) Update Products - Add New Product");
-            System.out.println("2) (Manager) Update Existing Product (price, description, or stock)");
-            System.out.println("3) (Manager) Remove a Product");
-            System.out.println("4) [Also has Employee Options]");
-            System.out.println("5) Quit and Save");
-
-            System.out.print("Choose an option: ");
+            out().println("\n-- Manager Menu --");
+            out().println("1) (Manager) Update Products - Add New Product");
+            out().println("2) (Manager) Update Existing Product (price, description, or stock)");
+            out().println("3) (Manager) Remove a Product");
+            out().println("4) (Manager) Import Products from File");
+            out().println("5) [Also has Employee Options]");
+            out().println("6) Product Statistics");
+            out().println("7) Quit and Save");
+
+            out().print("Choose an option: ");
             int choice = -1;
             try {
-                choice = Integer.parseInt(sc.nextLine());
+                choice = Integer.parseInt(in().nextLine());
             } catch (NumberFormatException ex) {
                 // ignore
             }
@@ -465,14 +920,20 @@ public class Main {
                     removeProduct();
                     break;
                 case 4:
+                    importProducts();
+                    break;
+                case 5:
                     // Jump to employee menu for manager
                     employeeMenu(m);
                     break;
-                case 5:
+                case 6:
+                    productStatistics();
+                    break;
+                case 7:
                     exit = true;
                     break;
                 default:
-                    System.out.println("Invalid option.");
+                    out().println("Invalid option.");
                     break;
             }
         }
@@ -484,17 +945,20 @@ public class Main {
     private static void guestMenu() {
         boolean exit = false;
         while (!exit) {
-            System.out.println("\n-- Guest Menu --");
-            System.out.println("1) Search for a product by Name");
-            System.out.println("2) Search for a product by Type");
-            System.out.println("3) List all products by Name");
-            System.out.println("4) List all products by Type");
-            System.out.println("5) Quit");
-
-            System.out.print("Choose an option: ");
+            out().println("\n-- Guest Menu --");
+            out().println("1) Search for a product by Name");
+            out().println("2) Search for a product by Type");
+            out().println("3) List all products by Name");
+            out().println("4) List all products by Type");
+            out().println("5) Search for products by keyword");
+            out().println("6) Browse products by price");
+            out().println("7) Search products by several fields");
+            out().println("8) Quit");
+
+            out().print("Choose an option: ");
             int choice = -1;
             try {
-                choice = Integer.parseInt(sc.nextLine());
+                choice = Integer.parseInt(in().nextLine());
             } catch (NumberFormatException ex) {
                 // ignore
             }
@@ -513,10 +977,19 @@ public class Main {
                     listProductsByType();
                     break;
                 case 5:
+                    searchProductsByKeyword();
+                    break;
+                case 6:
+                    browseByPrice();
+                    break;
+                case 7:
+                    queryProducts();
+                    break;
+                case 8:
                     exit = true;
                     break;
                 default:
-                    System.out.println("Invalid option.");
+                    out().println("Invalid option.");
                     break;
             }
         }
@@ -526,89 +999,321 @@ public class Main {
     // Customer Actions
     // --------------------------
     private static void searchProductByName() {
-        System.out.print("Enter product name: ");
-        String name = sc.nextLine();
-        Product found = bstByName.search(name);
+        out().print("Enter product name: ");
+        String name = in().nextLine();
+        String found;
+        storeLock.readLock().lock();
+        try {
+            Product p = bstByName.search(name);
+            found = p == null ? null : p.toString();
+        } finally {
+            storeLock.readLock().unlock();
+        }
         if (found != null) {
-            System.out.println(found);
+            out().println(found);
         } else {
-            System.out.println("Product not found.");
+            out().println("Product not found.");
+            printSuggestions(name);
+        }
+    }
+
+    // Lists a few product names starting with what was typed, so a partial
+    // or misspelled-at-the-end name still gets somewhere
+    private static void printSuggestions(String prefix) {
+        if (prefix.isEmpty()) return;
+        Product[] matches = new Product[SUGGESTIONS];
+        StringBuilder sb = new StringBuilder("Did you mean: ");
+        int n;
+        storeLock.readLock().lock();
+        try {
+            n = bstByName.startingWith(prefix, matches);
+            for (int i = 0; i < n; i++) {
+                if (i > 0) sb.append(", ");
+                sb.append(matches[i].getName());
+            }
+        } finally {
+            storeLock.readLock().unlock();
+        }
+        if (n > 0) {
+            out().println(sb);
         }
     }
 
     private static void searchProductByType() {
-        System.out.print("Enter product type: ");
-        String type = sc.nextLine();
-        Product found = bstByType.search(type);
-        if (found != null) {
-            System.out.println(found);
-        } else {
-            System.out.println("Product not found by that type.");
+        out().print("Enter product type: ");
+        String type = in().nextLine();
+        ArrayList<String> found = new ArrayList<>();
+        storeLock.readLock().lock();
+        try {
+            bstByType.forEachOfType(type, p -> found.add(p.toString()));
+        } finally {
+            storeLock.readLock().unlock();
+        }
+        for (String line : found) {
+            out().println(line);
+        }
+        if (found.isEmpty()) {
+            out().println("Product not found by that type.");
         }
     }
 
-    private static void listProductsByName() {
-        ArrayList<Product> products = new ArrayList<>();
-        bstByName.inOrder(products);
+    // Finds products by words in their name, brand or description
+    private static void searchProductsByKeyword() {
+        out().print("Enter keywords: ");
+        String query = in().nextLine();
+        out().println("1) Match all words");
+        out().println("2) Match any word");
+        out().print("Choose: ");
+        boolean any = in().nextLine().trim().equals("2");
+        ArrayList<String> found = new ArrayList<>();
+        storeLock.readLock().lock();
+        try {
+            for (Product p : any ? textIndex.searchAny(query) : textIndex.searchAll(query)) {
+                found.add(p.toString());
+            }
+        } finally {
+            storeLock.readLock().unlock();
+        }
+        for (String line : found) {
+            out().println(line);
+        }
+        if (found.isEmpty()) {
+            out().println("No products match.");
+        }
+    }
+
+    // Price range or cheapest/priciest products, optionally of one type
+    private static void browseByPrice() {
+        out().print("Enter product type (blank for all): ");
+        String type = in().nextLine().trim();
+        String ofType = type.isEmpty() ? null : type;
+        out().println("1) Products in a price range");
+        out().println("2) Cheapest products");
+        out().println("3) Most expensive products");
+        out().print("Choose: ");
+        String choice = in().nextLine().trim();
+        double min = 0, max = 0;
+        int k = 0;
+        try {
+            if (choice.equals("1")) {
+                out().print("Minimum price: ");
+                min = parsePrice(in().nextLine());
+                out().print("Maximum price: ");
+                max = parsePrice(in().nextLine());
+            } else if (choice.equals("2") || choice.equals("3")) {
+                out().print("How many? ");
+                k = Integer.parseInt(in().nextLine());
+                if (k < 1) {
+                    out().println("Invalid input.");
+                    return;
+                }
+            } else {
+                out().println("Invalid choice.");
+                return;
+            }
+        } catch (NumberFormatException e) {
+            out().println("Invalid input.");
+            return;
+        }
+        ArrayList<String> found = new ArrayList<>();
+        storeLock.readLock().lock();
+        try {
+            List<Product> products = choice.equals("1") ? priceIndex.inRange(min, max, ofType)
+                    : choice.equals("2") ? priceIndex.cheapest(k, ofType)
+                    : priceIndex.mostExpensive(k, ofType);
+            for (Product p : products) {
+                found.add(p.toString());
+            }
+        } finally {
+            storeLock.readLock().unlock();
+        }
+        for (String line : found) {
+            out().println(line);
+        }
+        if (found.isEmpty()) {
+            out().println("No products in that range.");
+        }
+    }
+
+    // Filters on name, type, brand, price and stock together; the planner
+    // picks which index to read (shown afterwards, for slow queries)
+    private static void queryProducts() {
+        out().println("Leave a field blank to skip it.");
+        ProductQuery query = new ProductQuery();
+        try {
+            out().print("Name (end with * for a prefix): ");
+            String name = in().nextLine().trim();
+            if (name.endsWith("*")) {
+                query.namePrefix(name.substring(0, name.length() - 1));
+            } else if (!name.isEmpty()) {
+                query.name(name);
+            }
+            out().print("Type: ");
+            String type = in().nextLine().trim();
+            if (!type.isEmpty()) query.type(type);
+            out().print("Brand: ");
+            String brand = in().nextLine().trim();
+            if (!brand.isEmpty()) query.brand(brand);
+            out().print("Minimum price: ");
+            String min = in().nextLine().trim();
+            if (!min.isEmpty()) query.minPrice(parsePrice(min));
+            out().print("Maximum price: ");
+            String max = in().nextLine().trim();
+            if (!max.isEmpty()) query.maxPrice(parsePrice(max));
+        } catch (NumberFormatException e) {
+            out().println("Invalid input.");
+            return;
+        }
+        out().print("Only products in stock? (y/n): ");
+        if (in().nextLine().trim().equalsIgnoreCase("y")) query.inStockOnly();
+
+        ArrayList<String> found = new ArrayList<>();
+        String explain;
+        storeLock.readLock().lock();
+        try {
+            ProductQuery.Plan plan = query.plan(bstByName, bstByType, priceIndex, brandIndex);
+            for (Product p : plan) {
+                found.add(p.toString());
+            }
+            explain = plan.explain();
+        } finally {
+            storeLock.readLock().unlock();
+        }
+        for (String line : found) {
+            out().println(line);
+        }
+        if (found.isEmpty()) {
+            out().println("No products match.");
+        }
+        out().println(explain);
+    }
 
-        // Print header
-        System.out.println("\nPRODUCTS SORTED BY NAME");
-        System.out.printf("%-20s %-15s %-10s %-15s %-10s %-30s\n",
-                "NAME", "TYPE", "PRICE", "BRAND", "QTY", "DESCRIPTION");
-        System.out.println("-----------------------------------------------------------------------------------------------");
+    // Double.parseDouble takes "NaN", which no price compares with
+    private static double parsePrice(String text) {
+        double price = Double.parseDouble(text);
+        if (Double.isNaN(price)) throw new NumberFormatException("not a number: " + text);
+        return price;
+    }
 
-        // Print each product in a formatted row
-        for (Product p : products) {
-            System.out.printf("%-20s %-15s $%-9.2f %-15s %-10d %-30s\n",
-                    p.getName(),
-                    p.getType(),
-                    p.getPrice(),
-                    p.getBrand(),
-                    p.getQuantityInStock(),
-                    p.getDescription());
+    private static void listProductsByName() {
+        out().print("Start at name (blank for the first): ");
+        String start = in().nextLine().trim();
+        int pos;
+        storeLock.readLock().lock();
+        try {
+            pos = bstByName.rank(start);
+        } finally {
+            storeLock.readLock().unlock();
         }
+        showPages("PRODUCTS SORTED BY NAME", pos,
+                last -> last == null ? bstByName.from("") : bstByName.after(last.getName()),
+                bstByName::select, bstByName::size);
     }
 
     private static void listProductsByType() {
-        ArrayList<Product> products = new ArrayList<>();
-        bstByType.inOrder(products);
+        out().print("Start at type (blank for the first): ");
+        String start = in().nextLine().trim();
+        int pos;
+        storeLock.readLock().lock();
+        try {
+            pos = bstByType.rank(start, "");
+        } finally {
+            storeLock.readLock().unlock();
+        }
+        showPages("PRODUCTS SORTED BY TYPE", pos,
+                last -> last == null ? bstByType.from("", "") : bstByType.after(last.getType(), last.getName()),
+                bstByType::select, bstByType::size);
+    }
 
-        // Print header
-        System.out.println("\nPRODUCTS SORTED BY TYPE");
-        System.out.printf("%-20s %-15s %-10s %-15s %-10s %-30s\n",
-                "NAME", "TYPE", "PRICE", "BRAND", "QTY", "DESCRIPTION");
-        System.out.println("-----------------------------------------------------------------------------------------------");
+    // Prints a listing PAGE_SIZE products at a time, starting at position
+    // start. seek returns a cursor just after the given product (null for
+    // the very beginning); select finds the product at a position. The lock
+    // isn't held while waiting on the user, so every page seeks again:
+    // after the last product shown for the next page, or via select when
+    // jumping to a page number. Either way a page costs O(log n + PAGE_SIZE)
+    // however deep into the catalog it is.
+    private static void showPages(String title, int start, Function<Product, Iterator<Product>> seek,
+                                  IntFunction<Product> select, IntSupplier size) {
+        int pos = start;
+        Product last = null;
+        while (true) {
+            ArrayList<Product> rows = new ArrayList<>(PAGE_SIZE);
+            boolean more;
+            int pages;
+            StringBuilder table = ListingRenderer.begin();
+            storeLock.readLock().lock();
+            try {
+                if (last == null && pos > 0) {
+                    last = select.apply(pos - 1);
+                }
+                Iterator<Product> cursor = seek.apply(last);
+                while (rows.size() < PAGE_SIZE && cursor.hasNext()) {
+                    rows.add(cursor.next());
+                }
+                more = cursor.hasNext();
+                pages = Math.max(1, (size.getAsInt() + PAGE_SIZE - 1) / PAGE_SIZE);
+                renderer.products(table, title + " (page " + (pos / PAGE_SIZE + 1) + " of " + pages + ")", rows);
+            } finally {
+                storeLock.readLock().unlock();
+            }
+            ListingRenderer.write(out(), table);
+            if (!more || rows.isEmpty()) return;
+            out().print("Press Enter for the next page, a page number to jump to, or q to stop: ");
+            String answer = in().nextLine().trim();
+            if (answer.equalsIgnoreCase("q")) return;
+            if (answer.isEmpty()) {
+                pos += rows.size();
+                last = rows.get(rows.size() - 1);
+                continue;
+            }
+            try {
+                int page = Integer.parseInt(answer);
+                if (page < 1 || page > pages) {
+                    out().println("No such page.");
+                    return;
+                }
+                pos = (page - 1) * PAGE_SIZE;
+                last = null;
+            } catch (NumberFormatException e) {
+                out().println("Invalid input.");
+                return;
+            }
+        }
+    }
 
-        // Print each product in a formatted row
-        for (Product p : products) {
-            System.out.printf("%-20s %-15s $%-9.2f %-15s %-10d %-30s\n",
-                    p.getName(),
-                    p.getType(),
-                    p.getPrice(),
-                    p.getBrand(),
-                    p.getQuantityInStock(),
-                    p.getDescription());
+    // Count, stock and average price for the catalog or one type. Count and
+    // price come off the trees' subtree totals; stock is added up.
+    private static void productStatistics() {
+        out().print("Enter product type (blank for all): ");
+        String type = in().nextLine().trim();
+        ProductStats stats;
+        storeLock.readLock().lock();
+        try {
+            stats = type.isEmpty() ? bstByName.stats() : bstByType.statsOfType(type);
+        } finally {
+            storeLock.readLock().unlock();
         }
+        out().println((type.isEmpty() ? "All products" : type) + ": " + stats);
     }
 
 
     private static void placeOrder(Customer c) {
-        System.out.print("Enter product name to order: ");
-        String productName = sc.nextLine();
+        out().print("Enter product name to order: ");
+        String productName = in().nextLine();
         // Check if product exists
-        Product p = bstByName.search(productName);
-        if (p == null) {
-            System.out.println("Product not found.");
+        if (!productExists(productName)) {
+            out().println("Product not found.");
+            printSuggestions(productName);
             return;
         }
-        System.out.println("Shipping methods available:");
-        System.out.println("1) OVERNIGHT");
-        System.out.println("2) RUSH");
-        System.out.println("3) STANDARD");
-        System.out.print("Choose: ");
+        out().println("Shipping methods available:");
+        out().println("1) OVERNIGHT");
+        out().println("2) RUSH");
+        out().println("3) STANDARD");
+        out().print("Choose: ");
         int smChoice = -1;
         try {
-            smChoice = Integer.parseInt(sc.nextLine());
+            smChoice = Integer.parseInt(in().nextLine());
         } catch (NumberFormatException e) {
             // ignore
         }
@@ -620,188 +1325,452 @@ public class Main {
             default: method = Order.ShippingMethod.STANDARD; break;
         }
 
-        // Generate a new order ID
-        int newOrderID = 1000 + allOrders.size() + 1;
-        Order newOrder = new Order(newOrderID, c.getUsername(), productName, method);
-        allOrders.add(newOrder);
-        orderHeap.insert(newOrder);
-        System.out.println("Order placed! Your order ID is: " + newOrderID);
+        int newOrderID = 0;
+        long ticket = 0;
+        boolean found, inStock = false;
+        String error = null;
+        storeLock.readLock().lock();
+        try {
+            Product p = bstByName.search(productName);
+            found = p != null;
+            // Reserving is a CAS on just this product, so a rush on one
+            // product doesn't hold up anything else
+            if (found && Inventory.reserve(p)) {
+                inStock = true;
+                try {
+                    // Generate a new order ID (only once the stock is ours,
+                    // so a sold-out rush doesn't burn IDs)
+                    newOrderID = orderIds.allocate();
+                } catch (IOException e) {
+                    Inventory.release(p);
+                    error = e.getMessage();
+                }
+                if (error == null) {
+                    synchronized (orderLock) {
+                        Order newOrder = new Order(newOrderID, c.getUsername(), p.getName(), method);
+                        addOrder(newOrder);
+                        ticket = journalEntry("ORDER", Integer.toString(newOrderID), c.getUsername(), p.getName(),
+                                method.name());
+                    }
+                }
+            }
+        } finally {
+            storeLock.readLock().unlock();
+        }
+        if (!found) {
+            out().println("Product not found.");
+            return;
+        }
+        if (!inStock) {
+            out().println("Sorry, " + productName + " is out of stock.");
+            return;
+        }
+        if (error != null) {
+            out().println("Could not place order: " + error);
+            return;
+        }
+        if (commit(ticket)) {
+            out().println("Order placed! Your order ID is: " + newOrderID);
+        }
+    }
+
+    // A customer can cancel their own orders until they ship; the stock
+    // goes back on the shelf
+    private static void cancelOrder(Customer c) {
+        out().print("Enter Order ID to cancel: ");
+        int id;
+        try {
+            id = Integer.parseInt(in().nextLine());
+        } catch (NumberFormatException e) {
+            out().println("Invalid input.");
+            return;
+        }
+
+        String problem = null;
+        long ticket = 0;
+        storeLock.readLock().lock();
+        try {
+            synchronized (orderLock) {
+                Order o = ordersByID.get(id);
+                if (o == null || !o.getUsername().equals(c.getUsername())) {
+                    problem = "You have no order with that ID.";
+                } else if (o.isShipped()) {
+                    problem = "That order has already shipped.";
+                } else {
+                    cancelOrder(o);
+                    ticket = journalEntry("CANCEL", Integer.toString(id));
+                }
+            }
+        } finally {
+            storeLock.readLock().unlock();
+        }
+        if (problem != null) {
+            out().println(problem);
+            return;
+        }
+        if (commit(ticket)) {
+            out().println("Order " + id + " has been cancelled.");
+        }
     }
 
     private static void viewShippedOrders(Customer c) {
-        // We can filter the shippedOrders list by this customer's username
-        shippedOrders.displayByUsername(c.getUsername());
+        StringBuilder listing = ListingRenderer.begin();
+        synchronized (orderLock) {
+            List<Order> shipped = ordersByCustomer.getShipped(c.getUsername());
+            // Most recently shipped first
+            for (int i = shipped.size() - 1; i >= 0; i--) {
+                shipped.get(i).appendTo(listing).append('\n');
+            }
+        }
+        if (listing.length() == 0) {
+            out().println("No shipped orders found for user " + c.getUsername());
+            return;
+        }
+        ListingRenderer.write(out(), listing);
     }
 
     private static void viewUnshippedOrders(Customer c) {
-        // Filter from the orderHeap or from allOrders where shipping is not done
-        // Easiest: check allOrders for orders that are not shipped yet and match username
-        System.out.println("Unshipped Orders for " + c.getUsername() + ":");
-        for (Order o : allOrders) {
-            if (o.getUsername().equals(c.getUsername()) && !o.isShipped()) {
-                System.out.println(o);
-            }
+        StringBuilder listing = ListingRenderer.begin();
+        listing.append("Unshipped Orders for ").append(c.getUsername()).append(":\n");
+        synchronized (orderLock) {
+            ListingRenderer.orders(listing, ordersByCustomer.getUnshipped(c.getUsername()));
         }
+        ListingRenderer.write(out(), listing);
     }
 
     // --------------------------
     // Employee Actions
     // --------------------------
     private static void searchOrderByID() {
-        System.out.print("Enter Order ID: ");
+        out().print("Enter Order ID: ");
         int id = -1;
         try {
-            id = Integer.parseInt(sc.nextLine());
+            id = Integer.parseInt(in().nextLine());
         } catch (NumberFormatException e) {
-            System.out.println("Invalid input.");
+            out().println("Invalid input.");
             return;
         }
 
-        Order found = null;
-        for (Order o : allOrders) {
-            if (o.getOrderID() == id) {
-                found = o;
-                break;
-            }
+        String found;
+        synchronized (orderLock) {
+            Order o = ordersByID.get(id);
+            found = o == null ? null : o.toString();
         }
-
         if (found != null) {
-            System.out.println(found);
+            out().println(found);
         } else {
-            System.out.println("Order not found.");
+            out().println("Order not found.");
         }
     }
 
     private static void searchOrderByCustomerName() {
-        System.out.print("Enter Customer First Name: ");
-        String fName = sc.nextLine();
-        System.out.print("Enter Customer Last Name: ");
-        String lName = sc.nextLine();
-
-        // We can look up the user by searching in userTable
-        // Then check orders for that username
-        // For simplicity, let's just brute force across all orders
-        boolean anyFound = false;
-        for (Order o : allOrders) {
-            User u = userTable.search(o.getUsername());
-            if (u != null && u instanceof Customer) {
-                Customer c = (Customer) u;
-                if (c.getFirstName().equalsIgnoreCase(fName) && c.getLastName().equalsIgnoreCase(lName)) {
-                    System.out.println(o);
-                    anyFound = true;
+        out().print("Enter Customer First Name: ");
+        String fName = in().nextLine();
+        out().print("Enter Customer Last Name: ");
+        String lName = in().nextLine();
+
+        // Find the matching customers through the name index, then
+        // print only their orders
+        ArrayList<String> customers = new ArrayList<>();
+        for (String username : userTable.searchByName(fName, lName)) {
+            if (userTable.search(username) instanceof Customer) {
+                customers.add(username);
+            }
+        }
+        ArrayList<String> found = new ArrayList<>();
+        synchronized (orderLock) {
+            for (String username : customers) {
+                for (Order o : ordersByCustomer.getUnshipped(username)) {
+                    found.add(o.toString());
+                }
+                for (Order o : ordersByCustomer.getShipped(username)) {
+                    found.add(o.toString());
                 }
             }
         }
-        if (!anyFound) {
-            System.out.println("No orders found for that customer name.");
+        for (String o : found) {
+            out().println(o);
+        }
+        if (found.isEmpty()) {
+            out().println("No orders found for that customer name.");
         }
     }
 
     private static void viewHighestPriorityOrder() {
-        Order highest = orderHeap.peek();
+        String highest;
+        synchronized (orderLock) {
+            Order o = orderQueue.peek();
+            highest = o == null ? null : o.toString();
+        }
         if (highest != null) {
-            System.out.println("Highest Priority Order: " + highest);
+            out().println("Highest Priority Order: " + highest);
         } else {
-            System.out.println("No orders in the heap.");
+            out().println("No unshipped orders.");
         }
     }
 
     private static void viewAllOrdersByPriority() {
-        // We can copy the heap, pop all to display in sorted order, then re-insert
-        OrderHeap tempHeap = new OrderHeap();
-        // Copy current
-        tempHeap.copyFrom(orderHeap);
-
-        System.out.println("All orders sorted by priority (highest first):");
-        while (!tempHeap.isEmpty()) {
-            Order o = tempHeap.remove();
-            System.out.println(o);
+        // The queue iterates in priority order, no copy needed
+        StringBuilder listing = ListingRenderer.begin();
+        listing.append("All orders sorted by priority (highest first):\n");
+        synchronized (orderLock) {
+            ListingRenderer.orders(listing, orderQueue);
         }
+        ListingRenderer.write(out(), listing);
     }
 
     private static void shipAnOrder() {
-        // Remove from heap, mark as shipped, and add to shipped linked list
-        Order o = orderHeap.remove();
+        Order o;
+        long ticket = 0;
+        storeLock.readLock().lock();
+        try {
+            synchronized (orderLock) {
+                // Remove from queue, mark as shipped, and add to shipped linked list
+                o = orderQueue.remove();
+                if (o != null) {
+                    markShipped(o);
+                    ticket = journalEntry("SHIP", Integer.toString(o.getOrderID()));
+                }
+            }
+        } finally {
+            storeLock.readLock().unlock();
+        }
         if (o == null) {
-            System.out.println("No unshipped orders to ship.");
+            out().println("No unshipped orders to ship.");
             return;
         }
-        o.setShipped(true);
-        shippedOrders.insert(o);
-        System.out.println("Order " + o.getOrderID() + " has been shipped.");
+        if (commit(ticket)) {
+            out().println("Order " + o.getOrderID() + " has been shipped.");
+        }
+    }
+
+    private static void shipOrderBatch() {
+        out().print("How many orders to ship? ");
+        int n;
+        try {
+            n = Integer.parseInt(in().nextLine());
+        } catch (NumberFormatException e) {
+            out().println("Invalid input.");
+            return;
+        }
+        if (n < 1) {
+            out().println("Invalid input.");
+            return;
+        }
+        ShippingSummary summary = shipBatch(n);
+        if (summary != null) {
+            out().println(summary);
+        }
+    }
+
+    private static void shipOrdersByPriority() {
+        out().println("Ship every order with priority at least:");
+        out().println("1) OVERNIGHT");
+        out().println("2) RUSH");
+        out().println("3) STANDARD (everything)");
+        out().print("Choose: ");
+        Order.ShippingMethod min;
+        switch (in().nextLine().trim()) {
+            case "1": min = Order.ShippingMethod.OVERNIGHT; break;
+            case "2": min = Order.ShippingMethod.RUSH; break;
+            case "3": min = Order.ShippingMethod.STANDARD; break;
+            default:
+                out().println("Invalid choice.");
+                return;
+        }
+        ShippingSummary summary = shipAtLeast(min);
+        if (summary != null) {
+            out().println(summary);
+        }
+    }
+
+    // Ships up to n orders, highest priority first. Like shipAtLeast, returns
+    // null if the shipment couldn't be saved.
+    static ShippingSummary shipBatch(int n) {
+        return ship(() -> orderQueue.removeFirst(n));
+    }
+
+    // Ships every queued order whose shipping method is min or higher priority
+    static ShippingSummary shipAtLeast(Order.ShippingMethod min) {
+        return ship(() -> orderQueue.removeAtLeast(min));
+    }
+
+    // Drains a batch off the queue in one pass, marks it shipped and
+    // journals it as a single entry
+    private static ShippingSummary ship(Supplier<List<Order>> drain) {
+        ShippingSummary summary = new ShippingSummary();
+        long ticket = 0;
+        storeLock.readLock().lock();
+        try {
+            synchronized (orderLock) {
+                List<Order> batch = drain.get();
+                if (!batch.isEmpty()) {
+                    String[] entry = new String[batch.size() + 1];
+                    entry[0] = "SHIP";
+                    for (int i = 0; i < batch.size(); i++) {
+                        Order o = batch.get(i);
+                        o.setShipped(true);
+                        ordersByCustomer.markShipped(o);
+                        summary.add(o);
+                        entry[i + 1] = Integer.toString(o.getOrderID());
+                    }
+                    ticket = journalEntry(entry);
+                }
+            }
+        } finally {
+            storeLock.readLock().unlock();
+        }
+        return commit(ticket) ? summary : null;
     }
 
     private static void addNewProduct() {
-        System.out.print("Enter new product name (primary key): ");
-        String name = sc.nextLine();
-        if (bstByName.search(name) != null) {
-            System.out.println("A product with that name already exists!");
+        out().print("Enter new product name (primary key): ");
+        String name = in().nextLine();
+        if (productExists(name)) {
+            out().println("A product with that name already exists!");
             return;
         }
-        System.out.print("Enter product type (secondary key): ");
-        String type = sc.nextLine();
-        System.out.print("Enter price: ");
-        double price = Double.parseDouble(sc.nextLine());
-        System.out.print("Enter brand: ");
-        String brand = sc.nextLine();
-        System.out.print("Enter quantity in stock: ");
-        int qty = Integer.parseInt(sc.nextLine());
-        System.out.print("Enter description: ");
-        String desc = sc.nextLine();
+        out().print("Enter product type (secondary key): ");
+        String type = in().nextLine();
+        out().print("Enter price: ");
+        double price = Double.parseDouble(in().nextLine());
+        out().print("Enter brand: ");
+        String brand = in().nextLine();
+        out().print("Enter quantity in stock: ");
+        int qty = Integer.parseInt(in().nextLine());
+        out().print("Enter description: ");
+        String desc = in().nextLine();
 
         Product p = new Product(name, type, price, brand, qty, desc);
-        bstByName.insert(p);
-        bstByType.insert(p);
-        System.out.println("Product added successfully.");
+        long ticket = -1;
+        storeLock.writeLock().lock();
+        try {
+            // may have been added by another session in the meantime
+            if (bstByName.search(name) == null) {
+                addProduct(p);
+                ticket = journalEntry("PADD", name, type, Double.toString(price), brand, Integer.toString(qty), desc);
+            }
+        } finally {
+            storeLock.writeLock().unlock();
+        }
+        if (ticket < 0) {
+            out().println("A product with that name already exists!");
+            return;
+        }
+        if (commit(ticket)) {
+            out().println("Product added successfully.");
+        }
+    }
+
+    // Merges every product in a products.txt-format file into the catalog.
+    // Names that already exist are left alone.
+    private static void importProducts() {
+        out().print("Enter file to import: ");
+        String file = in().nextLine();
+        ArrayList<String> errors = new ArrayList<>();
+        List<Product> batch = ParallelLoader.loadProducts(ForkJoinPool.commonPool(), file, errors);
+        for (String error : errors) {
+            out().println(error);
+        }
+        List<Product> added;
+        long ticket = 0;
+        storeLock.writeLock().lock();
+        try {
+            added = addProducts(batch);
+            for (Product p : added) {
+                ticket = journalEntry("PADD", p.getName(), p.getType(), Double.toString(p.getPrice()),
+                        p.getBrand(), Integer.toString(p.getQuantityInStock()), p.getDescription());
+            }
+        } finally {
+            storeLock.writeLock().unlock();
+        }
+        // one wait covers the whole batch
+        if (commit(ticket)) {
+            out().println("Imported " + added.size() + " product(s); "
+                    + (batch.size() - added.size()) + " already listed.");
+        }
     }
 
     private static void updateExistingProduct() {
-        System.out.print("Enter product name to update: ");
-        String name = sc.nextLine();
-        Product p = bstByName.search(name);
-        if (p == null) {
-            System.out.println("Product not found.");
+        out().print("Enter product name to update: ");
+        String name = in().nextLine();
+        if (!productExists(name)) {
+            out().println("Product not found.");
             return;
         }
-        System.out.println("What would you like to update?");
-        System.out.println("1) Price");
-        System.out.println("2) Description");
-        System.out.println("3) Add more to Stock");
-        int choice = Integer.parseInt(sc.nextLine());
+        out().println("What would you like to update?");
+        out().println("1) Price");
+        out().println("2) Description");
+        out().println("3) Add more to Stock");
+        int choice = Integer.parseInt(in().nextLine());
+        String newValue;
         switch (choice) {
             case 1:
-                System.out.print("Enter new price: ");
-                double newPrice = Double.parseDouble(sc.nextLine());
-                p.setPrice(newPrice);
+                out().print("Enter new price: ");
+                newValue = Double.toString(Double.parseDouble(in().nextLine()));
                 break;
             case 2:
-                System.out.print("Enter new description: ");
-                String newDesc = sc.nextLine();
-                p.setDescription(newDesc);
+                out().print("Enter new description: ");
+                newValue = in().nextLine();
                 break;
             case 3:
-                System.out.print("How many to add to stock? ");
-                int addQty = Integer.parseInt(sc.nextLine());
-                p.setQuantityInStock(p.getQuantityInStock() + addQty);
+                out().print("How many to add to stock? ");
+                newValue = Integer.toString(Integer.parseInt(in().nextLine()));
                 break;
             default:
-                System.out.println("Invalid choice.");
+                out().println("Invalid choice.");
                 return;
         }
-        System.out.println("Product updated successfully.");
+
+        long ticket;
+        storeLock.writeLock().lock();
+        try {
+            // look it up again, another session may have removed it
+            Product p = bstByName.search(name);
+            if (p == null) {
+                ticket = -1;
+            } else if (choice == 1) {
+                p.setPrice(Double.parseDouble(newValue));
+                ticket = journalEntry("PPRICE", p.getName(), newValue);
+            } else if (choice == 2) {
+                p.setDescription(newValue);
+                ticket = journalEntry("PDESC", p.getName(), newValue);
+            } else {
+                int total = Inventory.restock(p, Integer.parseInt(newValue));
+                ticket = journalEntry("PSTOCK", p.getName(), Integer.toString(total));
+            }
+        } finally {
+            storeLock.writeLock().unlock();
+        }
+        if (ticket < 0) {
+            out().println("Product not found.");
+            return;
+        }
+        if (commit(ticket)) {
+            out().println("Product updated successfully.");
+        }
     }
 
     private static void removeProduct() {
-        System.out.print("Enter product name to remove: ");
-        String name = sc.nextLine();
-        Product p = bstByName.search(name);
-        if (p == null) {
-            System.out.println("Product not found.");
+        out().print("Enter product name to remove: ");
+        String name = in().nextLine();
+        long ticket = -1;
+        storeLock.writeLock().lock();
+        try {
+            Product p = bstByName.search(name);
+            if (p != null) {
+                deleteProduct(p);
+                ticket = journalEntry("PREM", p.getName());
+            }
+        } finally {
+            storeLock.writeLock().unlock();
+        }
+        if (ticket < 0) {
+            out().println("Product not found.");
             return;
         }
-        bstByName.remove(name);
-        // Also remove from type BST
-        bstByType.remove(p.getType(), name);
-        System.out.println("Product removed successfully.");
+        if (commit(ticket)) {
+            out().println("Product removed successfully.");
+        }
     }
 }
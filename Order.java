@@ -23,6 +23,7 @@ public class Order {
     public ShippingMethod getShippingMethod() { return shippingMethod; }
     public boolean isShipped() { return shipped; }
     public void setShipped(boolean shipped) { this.shipped = shipped; }
+    public void setShippingMethod(ShippingMethod shippingMethod) { this.shippingMethod = shippingMethod; }
 
     // Priority: OVERNIGHT (high), RUSH (medium), STANDARD (low)
     public int getPriority() {
@@ -33,9 +34,18 @@ public class Order {
         }
     }
 
+    // Same text as toString, appended straight onto sb (listings render
+    // every order this way, so no format string or String per order)
+    public StringBuilder appendTo(StringBuilder sb) {
+        return sb.append("OrderID=").append(orderID)
+                .append(", User=").append(username)
+                .append(", Product=").append(productName)
+                .append(", Shipping=").append(shippingMethod.name())
+                .append(", Shipped=").append(shipped);
+    }
+
     @Override
     public String toString() {
-        return String.format("OrderID=%d, User=%s, Product=%s, Shipping=%s, Shipped=%b",
-                orderID, username, productName, shippingMethod, shipped);
+        return appendTo(new StringBuilder()).toString();
     }
 }
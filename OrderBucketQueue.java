@@ -0,0 +1,191 @@
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+// Priority queue of unshipped orders specialized for the three shipping
+// methods: one FIFO bucket per ShippingMethod, drained highest priority
+// first. insert/remove/peek are O(1) (no sifting), and iteration walks the
+// buckets in priority order without copying or popping anything.
+//
+// Orders are also looked up by order ID through an IntHashMap, so a
+// cancelled order comes out in O(1), and there are bulk drains for batch
+// shipping.
+public class OrderBucketQueue implements Iterable<Order> {
+    private class Node {
+        Order order;
+        Node prev, next;
+        int bucket;
+
+        Node(Order order, int bucket) {
+            this.order = order;
+            this.bucket = bucket;
+        }
+    }
+
+    // Shipping methods, highest priority first; bucket i holds BY_PRIORITY[i]
+    private static final Order.ShippingMethod[] BY_PRIORITY = {
+        Order.ShippingMethod.OVERNIGHT, Order.ShippingMethod.RUSH, Order.ShippingMethod.STANDARD
+    };
+    private static final int[] BUCKET_OF = new int[Order.ShippingMethod.values().length];
+    static {
+        for (int i = 0; i < BY_PRIORITY.length; i++) {
+            BUCKET_OF[BY_PRIORITY[i].ordinal()] = i;
+        }
+    }
+
+    private Node[] heads = new Node[BY_PRIORITY.length];
+    private Node[] tails = new Node[BY_PRIORITY.length];
+    private IntHashMap<Node> byId = new IntHashMap<>();
+    private int size;
+
+    private static int bucketOf(Order.ShippingMethod method) {
+        return BUCKET_OF[method.ordinal()];
+    }
+
+    public void insert(Order o) {
+        Node n = new Node(o, bucketOf(o.getShippingMethod()));
+        link(n);
+        byId.put(o.getOrderID(), n);
+        size++;
+    }
+
+    public Order remove() {
+        Node n = first();
+        if (n == null) return null;
+        unlink(n);
+        byId.remove(n.order.getOrderID());
+        size--;
+        return n.order;
+    }
+
+    // Removes up to n orders in priority order, in one pass: each bucket is
+    // walked once and cut off where the batch ends
+    public ArrayList<Order> removeFirst(int n) {
+        ArrayList<Order> drained = new ArrayList<>(Math.min(n, size));
+        for (int b = 0; b < heads.length && drained.size() < n; b++) {
+            Node cut = heads[b];
+            while (cut != null && drained.size() < n) {
+                drained.add(cut.order);
+                byId.remove(cut.order.getOrderID());
+                cut = cut.next;
+            }
+            detachBefore(b, cut);
+        }
+        size -= drained.size();
+        return drained;
+    }
+
+    // Removes every order whose shipping method is min or a higher priority,
+    // highest first. Whole buckets go at once.
+    public ArrayList<Order> removeAtLeast(Order.ShippingMethod min) {
+        ArrayList<Order> drained = new ArrayList<>();
+        for (int b = 0; b <= bucketOf(min); b++) {
+            for (Node n = heads[b]; n != null; n = n.next) {
+                drained.add(n.order);
+                byId.remove(n.order.getOrderID());
+            }
+            detachBefore(b, null);
+        }
+        size -= drained.size();
+        return drained;
+    }
+
+    public Order peek() {
+        Node n = first();
+        return n == null ? null : n.order;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean contains(int orderID) {
+        return byId.containsKey(orderID);
+    }
+
+    // Removes the order with this ID, e.g. when it is cancelled.
+    // Returns null if it isn't queued.
+    public Order removeById(int orderID) {
+        Node n = byId.remove(orderID);
+        if (n == null) return null;
+        unlink(n);
+        size--;
+        return n.order;
+    }
+
+    // Walks the queued orders highest priority first, oldest first within a
+    // priority. Doesn't modify the queue; don't insert or remove while iterating.
+    @Override
+    public Iterator<Order> iterator() {
+        return new Iterator<Order>() {
+            private Node next = first();
+
+            @Override
+            public boolean hasNext() {
+                return next != null;
+            }
+
+            @Override
+            public Order next() {
+                if (next == null) throw new NoSuchElementException();
+                Node n = next;
+                next = n.next != null ? n.next : firstFrom(n.bucket + 1);
+                return n.order;
+            }
+        };
+    }
+
+    private Node first() {
+        return firstFrom(0);
+    }
+
+    private Node firstFrom(int bucket) {
+        for (int b = bucket; b < heads.length; b++) {
+            if (heads[b] != null) return heads[b];
+        }
+        return null;
+    }
+
+    // Appends n at the tail of its bucket
+    private void link(Node n) {
+        int b = n.bucket;
+        n.next = null;
+        n.prev = tails[b];
+        if (tails[b] == null) {
+            heads[b] = n;
+        } else {
+            tails[b].next = n;
+        }
+        tails[b] = n;
+    }
+
+    // Drops every node of bucket b before cut (null = the whole bucket)
+    private void detachBefore(int b, Node cut) {
+        if (cut == null) {
+            heads[b] = tails[b] = null;
+        } else if (cut != heads[b]) {
+            cut.prev.next = null;
+            cut.prev = null;
+            heads[b] = cut;
+        }
+    }
+
+    private void unlink(Node n) {
+        int b = n.bucket;
+        if (n.prev == null) {
+            heads[b] = n.next;
+        } else {
+            n.prev.next = n.next;
+        }
+        if (n.next == null) {
+            tails[b] = n.prev;
+        } else {
+            n.next.prev = n.prev;
+        }
+        n.prev = n.next = null;
+    }
+}
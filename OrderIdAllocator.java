@@ -0,0 +1,75 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Hands out unique order IDs without locking: one atomic increment per ID,
+// so IDs are dense and in order no matter which session or thread asks.
+//
+// A high-water mark file records an ID that nothing handed out has reached.
+// It's moved up in steps of PERSIST_STEP, before an ID crosses it, so on
+// restart starting from the mark can't repeat an ID even if the orders
+// that used them were cancelled and are gone from the files. That's one
+// synced write per PERSIST_STEP orders; everything else is just the
+// increment.
+public class OrderIdAllocator {
+    private static final int PERSIST_STEP = 1024;
+    private static final int FIRST_ID = 1001;
+
+    private final File markFile;
+    private final AtomicInteger next = new AtomicInteger(FIRST_ID);
+    private volatile int persisted = FIRST_ID; // every ID handed out is below this
+
+    public OrderIdAllocator(File markFile) {
+        this.markFile = markFile;
+    }
+
+    // Picks up from the mark saved by the last run, if there is one
+    public void resume() throws IOException {
+        if (!markFile.exists()) return;
+        String text = new String(Files.readAllBytes(markFile.toPath()), StandardCharsets.UTF_8).trim();
+        int mark;
+        try {
+            mark = Integer.parseInt(text);
+        } catch (NumberFormatException e) {
+            throw new IOException(markFile + " is corrupt: " + text);
+        }
+        next.accumulateAndGet(mark, Math::max);
+        persisted = Math.max(persisted, mark);
+    }
+
+    // Makes sure IDs already in use (loaded orders) are never handed out
+    public void observe(int id) {
+        next.accumulateAndGet(id + 1, Math::max);
+    }
+
+    public int allocate() throws IOException {
+        // stops at Integer.MAX_VALUE instead of wrapping round to negative IDs
+        int id = next.getAndUpdate(v -> v == Integer.MAX_VALUE ? v : v + 1);
+        if (id == Integer.MAX_VALUE) {
+            throw new IOException("no order IDs left (reached " + Integer.MAX_VALUE + ")");
+        }
+        if (id >= persisted) {
+            persistPast(id);
+        }
+        return id;
+    }
+
+    // Moves the mark on disk past id; the write is synced before id is used
+    private synchronized void persistPast(int id) throws IOException {
+        if (id < persisted) return; // another thread already did
+        int mark = (int) Math.min(Integer.MAX_VALUE, (long) id + 1 + PERSIST_STEP);
+        File tmp = new File(markFile.getPath() + ".tmp");
+        Files.write(tmp.toPath(), (mark + "\n").getBytes(StandardCharsets.UTF_8));
+        try (FileChannel ch = FileChannel.open(tmp.toPath(), StandardOpenOption.WRITE)) {
+            ch.force(true);
+        }
+        Files.move(tmp.toPath(), markFile.toPath(),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        persisted = mark;
+    }
+}
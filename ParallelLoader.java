@@ -0,0 +1,251 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+
+// Reads and parses the five text data files on a fork-join pool.
+// All files are read at the same time, and each file is cut into
+// line-aligned chunks of about CHUNK_BYTES that are parsed in parallel.
+// Chunk results are stitched back together in file order, so records come
+// out exactly as a sequential read would produce them. Only parsing happens
+// here; the caller merges the records into the (non thread-safe) store
+// structures.
+//
+// Lines are tokenized straight from the file bytes with CsvTokenizer, so
+// only the fields that end up in a record become Strings.
+public class ParallelLoader {
+    private static final int CHUNK_BYTES = 1 << 20;
+
+    // Turns one tokenized line into a record, or null if it has the wrong
+    // number of fields
+    private interface LineParser<T> {
+        T parse(CsvTokenizer line);
+    }
+
+    public final ArrayList<User> users = new ArrayList<>();
+    public final List<Product> products;
+    public final List<Order> orders;
+    // One message per file that couldn't be read or had bad lines
+    public final ArrayList<String> errors = new ArrayList<>();
+
+    private ParallelLoader(List<Product> products, List<Order> orders) {
+        this.products = products;
+        this.orders = orders;
+    }
+
+    public static ParallelLoader load(ForkJoinPool pool, String customersFile, String employeesFile,
+                                      String managersFile, String productsFile, String ordersFile) {
+        FileTask<User> customers = new FileTask<>(customersFile, "customers",
+                line -> parseUser(line, 'C'));
+        FileTask<User> employees = new FileTask<>(employeesFile, "employees",
+                line -> parseUser(line, 'E'));
+        FileTask<User> managers = new FileTask<>(managersFile, "managers",
+                line -> parseUser(line, 'M'));
+        FileTask<Product> products = new FileTask<>(productsFile, "products", ParallelLoader::parseProduct);
+        FileTask<Order> orders = new FileTask<>(ordersFile, "orders", ParallelLoader::parseOrder);
+
+        pool.invoke(ForkJoinTask.adapt(() -> ForkJoinTask.invokeAll(customers, employees, managers, products, orders)));
+
+        ParallelLoader result = new ParallelLoader(products.join(), orders.join());
+        // same order as the sequential loader: later files win on duplicate usernames
+        result.users.addAll(customers.join());
+        result.users.addAll(employees.join());
+        result.users.addAll(managers.join());
+        for (FileTask<?> t : new FileTask<?>[] {customers, employees, managers, products, orders}) {
+            if (t.error != null) {
+                result.errors.add(t.error);
+            }
+        }
+        return result;
+    }
+
+    // Reads just a products file (e.g. for a manager import); problems are
+    // added to errors
+    public static List<Product> loadProducts(ForkJoinPool pool, String productsFile, List<String> errors) {
+        FileTask<Product> products = new FileTask<>(productsFile, "products", ParallelLoader::parseProduct);
+        List<Product> result = pool.invoke(products);
+        if (products.error != null) {
+            errors.add(products.error);
+        }
+        return result;
+    }
+
+    // --------------------------
+    // Line parsers
+    // --------------------------
+    private static final Order.ShippingMethod[] METHODS = Order.ShippingMethod.values();
+
+    private static User parseUser(CsvTokenizer line, char kind) {
+        // Format: username,password,firstName,lastName
+        if (!line.next()) return null;
+        String username = line.stringValue();
+        if (!line.next()) return null;
+        String password = line.stringValue();
+        if (!line.next()) return null;
+        String firstName = line.stringValue();
+        if (!line.next()) return null;
+        String lastName = line.stringValue();
+        if (!line.atEnd()) return null;
+        switch (kind) {
+            case 'M': return new Manager(username, password, firstName, lastName);
+            case 'E': return new Employee(username, password, firstName, lastName);
+            default: return new Customer(username, password, firstName, lastName);
+        }
+    }
+
+    private static Product parseProduct(CsvTokenizer line) {
+        // Format: instrumentName, instrumentType, price, brand, quantityInStock, description
+        if (!line.next()) return null;
+        String name = line.stringValue();
+        if (!line.next()) return null;
+        String type = line.stringValue();
+        if (!line.next()) return null;
+        double price = line.doubleValue();
+        if (!line.next()) return null;
+        String brand = line.stringValue();
+        if (!line.next()) return null;
+        int qty = line.intValue();
+        if (!line.next()) return null;
+        String desc = line.stringValue();
+        if (!line.atEnd()) return null;
+        return new Product(name, type, price, brand, qty, desc);
+    }
+
+    private static Order parseOrder(CsvTokenizer line) {
+        // Format: orderID,username,productName,shippingMethod[,shipped]
+        if (!line.next()) return null;
+        int orderID = line.intValue();
+        if (!line.next()) return null;
+        String username = line.stringValue();
+        if (!line.next()) return null;
+        String productName = line.stringValue();
+        if (!line.next()) return null;
+        Order o = new Order(orderID, username, productName, line.enumValue(METHODS));
+        if (line.next()) {
+            o.setShipped(line.booleanValue());
+            if (!line.atEnd()) return null;
+        }
+        return o;
+    }
+
+    // --------------------------
+    // Tasks
+    // --------------------------
+
+    // Reads one file and parses its chunks in parallel
+    private static class FileTask<T> extends RecursiveTask<List<T>> {
+        private static final long serialVersionUID = 1L;
+
+        private final String file;
+        private final String what;
+        private final LineParser<T> parser;
+        String error;
+
+        FileTask(String file, String what, LineParser<T> parser) {
+            this.file = file;
+            this.what = what;
+            this.parser = parser;
+        }
+
+        @Override
+        protected List<T> compute() {
+            byte[] bytes;
+            try {
+                bytes = Files.readAllBytes(Paths.get(file));
+            } catch (IOException e) {
+                error = "Could not load " + what + ": " + e.getMessage();
+                return new ArrayList<>();
+            }
+
+            // Cut at the first newline after every CHUNK_BYTES
+            ArrayList<ChunkTask<T>> chunks = new ArrayList<>();
+            int start = 0;
+            while (start < bytes.length) {
+                int end = Math.min(start + CHUNK_BYTES, bytes.length);
+                while (end < bytes.length && bytes[end - 1] != '\n') {
+                    end++;
+                }
+                chunks.add(new ChunkTask<>(bytes, start, end, parser));
+                start = end;
+            }
+            if (chunks.size() == 1) {
+                chunks.get(0).compute();
+            } else {
+                invokeAll(chunks);
+            }
+
+            int total = 0;
+            int bad = 0;
+            for (ChunkTask<T> c : chunks) {
+                total += c.records.size();
+                bad += c.badLines;
+            }
+            ArrayList<T> all = new ArrayList<>(total);
+            for (ChunkTask<T> c : chunks) {
+                all.addAll(c.records);
+            }
+            if (bad > 0) {
+                error = "Skipped " + bad + " malformed line(s) in " + file;
+            }
+            return all;
+        }
+    }
+
+    // Parses the lines in bytes[start, end)
+    private static class ChunkTask<T> extends RecursiveTask<Void> {
+        private static final long serialVersionUID = 1L;
+
+        private final byte[] bytes;
+        private final int start, end;
+        private final LineParser<T> parser;
+        final ArrayList<T> records = new ArrayList<>();
+        int badLines;
+
+        ChunkTask(byte[] bytes, int start, int end, LineParser<T> parser) {
+            this.bytes = bytes;
+            this.start = start;
+            this.end = end;
+            this.parser = parser;
+        }
+
+        @Override
+        protected Void compute() {
+            CsvTokenizer line = new CsvTokenizer();
+            int pos = start;
+            while (pos < end) {
+                int nl = pos;
+                while (nl < end && bytes[nl] != '\n') {
+                    nl++;
+                }
+                int lineEnd = nl > pos && bytes[nl - 1] == '\r' ? nl - 1 : nl;
+                int lineStart = pos;
+                pos = nl + 1;
+                if (bytes[lineStart] == '#' || isBlank(lineStart, lineEnd)) continue;
+                line.reset(bytes, lineStart, lineEnd);
+                try {
+                    T record = parser.parse(line);
+                    if (record != null) {
+                        records.add(record);
+                    } else {
+                        badLines++;
+                    }
+                } catch (IllegalArgumentException e) {
+                    // bad number, shipping method or quoting
+                    badLines++;
+                }
+            }
+            return null;
+        }
+
+        private boolean isBlank(int from, int to) {
+            for (int i = from; i < to; i++) {
+                if ((bytes[i] & 0xff) > ' ') return false;
+            }
+            return true;
+        }
+    }
+}
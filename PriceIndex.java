@@ -0,0 +1,123 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+// Products ordered by price, over the whole catalog and per type.
+// Keys are (price, name), so equal prices don't collide and ties come out
+// in name order. A range or top-k query is one O(log n) descent plus k
+// steps along the tree.
+//
+// Registered as a ProductListener so setPrice moves a product to its new
+// key. Not thread-safe; Main uses it under the catalog lock.
+public class PriceIndex implements ProductListener {
+    private static class Key implements Comparable<Key> {
+        final double price;
+        final String name;
+
+        Key(double price, String name) {
+            this.price = price;
+            this.name = name;
+        }
+
+        @Override
+        public int compareTo(Key o) {
+            int cmp = Double.compare(price, o.price);
+            return cmp != 0 ? cmp : name.compareToIgnoreCase(o.name);
+        }
+    }
+
+    private final TreeMap<Key, Product> all = new TreeMap<>();
+    // case-folded type -> that type's products
+    private final HashMap<String, TreeMap<Key, Product>> byType = new HashMap<>();
+
+    public void add(Product p) {
+        Key k = new Key(p.getPrice(), p.getName());
+        all.put(k, p);
+        byType.computeIfAbsent(p.getType().toLowerCase(), t -> new TreeMap<>()).put(k, p);
+    }
+
+    public void remove(Product p) {
+        remove(p, p.getPrice());
+    }
+
+    // Removes p if it's indexed under price; false if it wasn't
+    private boolean remove(Product p, double price) {
+        Key k = new Key(price, p.getName());
+        if (all.get(k) != p) return false;
+        all.remove(k);
+        TreeMap<Key, Product> ofType = byType.get(p.getType().toLowerCase());
+        ofType.remove(k);
+        if (ofType.isEmpty()) {
+            byType.remove(p.getType().toLowerCase());
+        }
+        return true;
+    }
+
+    @Override
+    public void priceChanged(Product p, double oldPrice) {
+        // products that aren't in the store (e.g. snapshot copies) are ignored
+        if (remove(p, oldPrice)) {
+            add(p);
+        }
+    }
+
+    // Products priced from min to max inclusive, cheapest first. type may
+    // be null for every type.
+    public List<Product> inRange(double min, double max, String type) {
+        return new ArrayList<>(range(min, max, type).values());
+    }
+
+    // Same products as inRange, pulled one at a time
+    public Iterator<Product> rangeIterator(double min, double max, String type) {
+        return range(min, max, type).values().iterator();
+    }
+
+    // How many products inRange would return, but stops counting at cap
+    // so estimating a huge range stays cheap
+    public int countInRange(double min, double max, String type, int cap) {
+        int count = 0;
+        Iterator<Product> it = rangeIterator(min, max, type);
+        while (count < cap && it.hasNext()) {
+            it.next();
+            count++;
+        }
+        return count;
+    }
+
+    private NavigableMap<Key, Product> range(double min, double max, String type) {
+        // NaN compares false both ways, and subMap would throw on it
+        if (min > max || Double.isNaN(min) || Double.isNaN(max)) return new TreeMap<>();
+        // "" sorts before every name, so these bound every product at min..max
+        return mapFor(type).subMap(new Key(min, ""), true, new Key(Math.nextUp(max), ""), false);
+    }
+
+    public List<Product> cheapest(int k, String type) {
+        return firstK(mapFor(type), k);
+    }
+
+    public List<Product> mostExpensive(int k, String type) {
+        return firstK(mapFor(type).descendingMap(), k);
+    }
+
+    private static List<Product> firstK(NavigableMap<Key, Product> map, int k) {
+        ArrayList<Product> result = new ArrayList<>(Math.min(k, map.size()));
+        for (Product p : map.values()) {
+            if (result.size() == k) break;
+            result.add(p);
+        }
+        return result;
+    }
+
+    public int size() {
+        return all.size();
+    }
+
+    private NavigableMap<Key, Product> mapFor(String type) {
+        if (type == null) return all;
+        TreeMap<Key, Product> ofType = byType.get(type.toLowerCase());
+        return ofType != null ? ofType : new TreeMap<>();
+    }
+}
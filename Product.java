@@ -1,11 +1,23 @@
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
 public class Product {
+    // Told about every price, stock and description change (see ProductListener)
+    private static final CopyOnWriteArrayList<ProductListener> listeners = new CopyOnWriteArrayList<>();
+
+    // Stock changes are compare-and-swaps on this field (see Inventory), so
+    // sessions ordering the same product never oversell it and never block
+    // each other
+    private static final AtomicIntegerFieldUpdater<Product> STOCK =
+            AtomicIntegerFieldUpdater.newUpdater(Product.class, "quantityInStock");
+
     // Primary key: name
     // Secondary key: type
     private String name;
     private String type;
     private double price;
     private String brand;
-    private int quantityInStock;
+    private volatile int quantityInStock;
     private String description;
 
     public Product(String name, String type, double price, String brand, int quantityInStock, String description) {
@@ -24,13 +36,63 @@ public class Product {
     public int getQuantityInStock() { return quantityInStock; }
     public String getDescription() { return description; }
 
-    public void setPrice(double price) { this.price = price; }
-    public void setDescription(String description) { this.description = description; }
-    public void setQuantityInStock(int qty) { this.quantityInStock = qty; }
+    public void setPrice(double price) {
+        double old = this.price;
+        this.price = price;
+        for (ProductListener l : listeners) {
+            l.priceChanged(this, old);
+        }
+    }
+
+    public void setDescription(String description) {
+        String old = this.description;
+        this.description = description;
+        for (ProductListener l : listeners) {
+            l.descriptionChanged(this, old);
+        }
+    }
+
+    public void setQuantityInStock(int qty) {
+        int old = STOCK.getAndSet(this, qty);
+        fireStockChanged(old, qty);
+    }
+
+    // Takes qty units if at least that many are in stock
+    public boolean tryReserve(int qty) {
+        while (true) {
+            int current = quantityInStock;
+            if (current < qty) return false;
+            if (STOCK.compareAndSet(this, current, current - qty)) {
+                fireStockChanged(current, current - qty);
+                return true;
+            }
+        }
+    }
+
+    // Adds qty units (atomically) and returns the new stock
+    public int addStock(int qty) {
+        int total = STOCK.addAndGet(this, qty);
+        fireStockChanged(total - qty, total);
+        return total;
+    }
+
+    private void fireStockChanged(int old, int now) {
+        for (ProductListener l : listeners) {
+            l.stockChanged(this, old, now);
+        }
+    }
+
+    public static void addListener(ProductListener l) {
+        listeners.add(l);
+    }
+
+    public static void removeListener(ProductListener l) {
+        listeners.remove(l);
+    }
 
     @Override
     public String toString() {
         return String.format("[Name=%s, Type=%s, Brand=%s, Price=%.2f, Qty=%d, Desc=%s]",
                 name, type, brand, price, quantityInStock, description);
     }
-}
\ No newline at end of file
+}
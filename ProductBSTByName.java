@@ -1,15 +1,49 @@
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.function.ToIntFunction;
 
-public class ProductBSTByName {
+// AVL tree keyed on product name (case-insensitive).
+// Products are saved in name order, so a plain BST rebuilt from products.txt
+// turns into a linked list. Rebalancing on insert/remove keeps the height
+// (and the recursion depth of every method here) at O(log n).
+//
+// Every node also keeps the size and total price of its subtree, so rank,
+// select and the catalog's count/average price are O(log n) walks
+// instead of a traversal. Those fields are recomputed from the children
+// wherever height is (inserts, removes, rotations, bulk builds), and price
+// changes reach them as ProductListener deltas along the root-to-product
+// path. Stock is reserved lock-free on every order, so it isn't kept in
+// the tree (that would put the whole tree on the reservation path); stock
+// totals are added up from the products when asked for.
+//
+// Not thread-safe: this relies on Main's storeLock. Inserts, removes, bulk
+// loads and price changes happen under the write lock; searches, cursors
+// and statistics run under the read lock.
+public class ProductBSTByName implements ProductListener {
     private class Node {
         Product data;
         Node left, right;
+        int height;
+        int size;
+        double sumPrice;
 
         Node(Product p) {
             data = p;
+            height = 1;
+            size = 1;
+            sumPrice = p.getPrice();
         }
     }
 
+    // Tree order, used to sort batches for bulkLoad
+    private static final Comparator<Product> ORDER =
+            (a, b) -> a.getName().compareToIgnoreCase(b.getName());
+
     private Node root;
 
     public void insert(Product p) {
@@ -27,8 +61,9 @@ public class ProductBSTByName {
             root.right = insertRec(root.right, p);
         } else {
             // same name => update or ignore. We'll ignore for simplicity.
+            return root;
         }
-        return root;
+        return balance(root);
     }
 
     public Product search(String name) {
@@ -46,6 +81,97 @@ public class ProductBSTByName {
         return null;
     }
 
+    // Fills out with the first (alphabetically) products whose name starts
+    // with prefix, ignoring case, and returns how many it found. Only the
+    // path down to the first match and the matches themselves are visited,
+    // and nothing is allocated, so it's cheap enough to run per keystroke.
+    public int startingWith(String prefix, Product[] out) {
+        return collectPrefix(root, prefix, out, 0);
+    }
+
+    private int collectPrefix(Node n, String prefix, Product[] out, int count) {
+        if (n == null || count == out.length) return count;
+        String name = n.data.getName();
+        if (name.regionMatches(true, 0, prefix, 0, prefix.length())) {
+            // matches can be on both sides
+            count = collectPrefix(n.left, prefix, out, count);
+            if (count < out.length) {
+                out[count++] = n.data;
+            }
+            return collectPrefix(n.right, prefix, out, count);
+        }
+        if (name.compareToIgnoreCase(prefix) < 0) {
+            return collectPrefix(n.right, prefix, out, count);
+        }
+        return collectPrefix(n.left, prefix, out, count);
+    }
+
+    // Cursors: products in name order, handed out one at a time. Only the
+    // path to the next product is kept on a stack, so seeking costs
+    // O(log n) and each step O(1) amortized; taking a page of k products is
+    // O(log n + k) however big the catalog is. Don't change the tree while
+    // a cursor is in use (seek a new one from the last key instead).
+
+    // Products from name on (inclusive)
+    public Iterator<Product> from(String name) {
+        return new Cursor(name, true);
+    }
+
+    // Products after name, e.g. to pick up where the last page ended
+    public Iterator<Product> after(String name) {
+        return new Cursor(name, false);
+    }
+
+    // Products whose name starts with prefix (ignoring case). "" walks the
+    // whole catalog.
+    public Iterator<Product> withPrefix(String prefix) {
+        return new Cursor(prefix, true) {
+            @Override
+            public boolean hasNext() {
+                // names with the prefix are contiguous, so the first miss ends it
+                return super.hasNext()
+                        && peek().getName().regionMatches(true, 0, prefix, 0, prefix.length());
+            }
+        };
+    }
+
+    private class Cursor implements Iterator<Product> {
+        private final ArrayDeque<Node> stack = new ArrayDeque<>();
+
+        Cursor(String start, boolean inclusive) {
+            // stack up the path to the first name >= start (> if exclusive)
+            Node n = root;
+            while (n != null) {
+                int cmp = n.data.getName().compareToIgnoreCase(start);
+                if (cmp > 0 || (inclusive && cmp == 0)) {
+                    stack.push(n);
+                    n = n.left;
+                } else {
+                    n = n.right;
+                }
+            }
+        }
+
+        Product peek() {
+            return stack.peek().data;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !stack.isEmpty();
+        }
+
+        @Override
+        public Product next() {
+            if (!hasNext()) throw new NoSuchElementException();
+            Node n = stack.pop();
+            for (Node c = n.right; c != null; c = c.left) {
+                stack.push(c);
+            }
+            return n.data;
+        }
+    }
+
     public void remove(String name) {
         root = removeRec(root, name);
     }
@@ -67,7 +193,7 @@ public class ProductBSTByName {
             root.data = min.data;
             root.right = removeRec(root.right, min.data.getName());
         }
-        return root;
+        return balance(root);
     }
 
     private Node findMin(Node root) {
@@ -77,6 +203,52 @@ public class ProductBSTByName {
         return root;
     }
 
+    // Adds a whole batch at once: the batch is sorted by name once, merged
+    // with the tree's current in-order sequence, and the tree is rebuilt
+    // perfectly balanced from the merged array in linear time. Already sorted
+    // input (products.txt, imports) sorts in O(m). As with insert, a product
+    // whose key is already present (in the tree or earlier in the batch) is
+    // skipped. Returns the products that were added, in tree order.
+    public ArrayList<Product> bulkLoad(List<Product> batch) {
+        Product[] sorted = batch.toArray(new Product[0]);
+        Arrays.sort(sorted, ORDER); // stable, so the first duplicate wins
+        ArrayList<Product> existing = new ArrayList<>();
+        inOrder(existing);
+
+        Product[] merged = new Product[existing.size() + sorted.length];
+        ArrayList<Product> added = new ArrayList<>();
+        int n = 0, i = 0, j = 0;
+        while (j < sorted.length) {
+            Product p = sorted[j];
+            int cmp = i < existing.size() ? ORDER.compare(existing.get(i), p) : 1;
+            if (cmp < 0) {
+                merged[n++] = existing.get(i++);
+            } else {
+                if (cmp > 0 && (n == 0 || ORDER.compare(merged[n - 1], p) != 0)) {
+                    merged[n++] = p;
+                    added.add(p);
+                }
+                j++;
+            }
+        }
+        while (i < existing.size()) {
+            merged[n++] = existing.get(i++);
+        }
+        root = build(merged, 0, n);
+        return added;
+    }
+
+    // Builds a balanced subtree from sorted[lo, hi)
+    private Node build(Product[] sorted, int lo, int hi) {
+        if (lo >= hi) return null;
+        int mid = (lo + hi) >>> 1;
+        Node n = new Node(sorted[mid]);
+        n.left = build(sorted, lo, mid);
+        n.right = build(sorted, mid + 1, hi);
+        update(n);
+        return n;
+    }
+
     public void inOrder(ArrayList<Product> list) {
         inOrderRec(root, list);
     }
@@ -87,4 +259,147 @@ public class ProductBSTByName {
         list.add(root.data);
         inOrderRec(root.right, list);
     }
+
+    // --------------------------
+    // Order statistics
+    // --------------------------
+    public int size() {
+        return size(root);
+    }
+
+    // How many products sort before name
+    public int rank(String name) {
+        return below(p -> p.getName().compareToIgnoreCase(name)).count;
+    }
+
+    // The product at position i (0-based) in name order, or null if
+    // there's no such position
+    public Product select(int i) {
+        if (i < 0 || i >= size(root)) return null;
+        Node n = root;
+        while (true) {
+            int left = size(n.left);
+            if (i < left) {
+                n = n.left;
+            } else if (i == left) {
+                return n.data;
+            } else {
+                i -= left + 1;
+                n = n.right;
+            }
+        }
+    }
+
+    // Count and totals for the whole catalog
+    public ProductStats stats() {
+        if (root == null) return new ProductStats(0, 0, 0);
+        long stock = 0;
+        for (Iterator<Product> it = from(""); it.hasNext(); ) {
+            stock += it.next().getQuantityInStock();
+        }
+        return new ProductStats(root.size, root.sumPrice, stock);
+    }
+
+    // Count and total price of the products p with side(p) < 0, which have
+    // to be a prefix of the tree order: one walk down, adding up every left
+    // subtree that's entirely before the boundary. Stock isn't kept here.
+    private ProductStats below(ToIntFunction<Product> side) {
+        int count = 0;
+        double price = 0;
+        Node n = root;
+        while (n != null) {
+            if (side.applyAsInt(n.data) < 0) {
+                if (n.left != null) {
+                    count += n.left.size;
+                    price += n.left.sumPrice;
+                }
+                count++;
+                price += n.data.getPrice();
+                n = n.right;
+            } else {
+                n = n.left;
+            }
+        }
+        return new ProductStats(count, price, 0);
+    }
+
+    @Override
+    public void priceChanged(Product p, double oldPrice) {
+        addToPath(p, p.getPrice() - oldPrice);
+    }
+
+    // Adds a change to p's price into the totals from the root down to p.
+    // Products that aren't in the tree (snapshot copies, removed ones) are
+    // ignored.
+    private void addToPath(Product p, double price) {
+        if (search(p.getName()) != p) return;
+        Node n = root;
+        while (n != null) {
+            n.sumPrice += price;
+            int cmp = p.getName().compareToIgnoreCase(n.data.getName());
+            if (cmp == 0) return;
+            n = cmp < 0 ? n.left : n.right;
+        }
+    }
+
+    // --------------------------
+    // AVL balancing
+    // --------------------------
+    private int height(Node n) {
+        return n == null ? 0 : n.height;
+    }
+
+    private int size(Node n) {
+        return n == null ? 0 : n.size;
+    }
+
+    // Recomputes n's height, size and total price from its children
+    private void update(Node n) {
+        n.height = 1 + Math.max(height(n.left), height(n.right));
+        n.size = 1 + size(n.left) + size(n.right);
+        n.sumPrice = n.data.getPrice();
+        if (n.left != null) {
+            n.sumPrice += n.left.sumPrice;
+        }
+        if (n.right != null) {
+            n.sumPrice += n.right.sumPrice;
+        }
+    }
+
+    private Node rotateRight(Node n) {
+        Node l = n.left;
+        n.left = l.right;
+        l.right = n;
+        update(n);
+        update(l);
+        return l;
+    }
+
+    private Node rotateLeft(Node n) {
+        Node r = n.right;
+        n.right = r.left;
+        r.left = n;
+        update(n);
+        update(r);
+        return r;
+    }
+
+    // Restores the AVL invariant at n (children are already balanced)
+    private Node balance(Node n) {
+        update(n);
+        int bf = height(n.left) - height(n.right);
+        if (bf > 1) {
+            if (height(n.left.left) < height(n.left.right)) {
+                n.left = rotateLeft(n.left);
+            }
+            return rotateRight(n);
+        }
+        if (bf < -1) {
+            if (height(n.right.right) < height(n.right.left)) {
+                n.right = rotateRight(n.right);
+            }
+            return rotateLeft(n);
+        }
+        return n;
+    }
 }
@@ -1,15 +1,45 @@
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.function.Consumer;
+import java.util.function.ToIntFunction;
 
-public class ProductBSTByType {
+// AVL tree keyed on (type, name), both case-insensitive.
+// All products of one type sit in a contiguous key range, which is what
+// forEachOfType() walks.
+//
+// Like ProductBSTByName, every node keeps its subtree's size and total
+// price, so rank, select and per-type count/average price are O(log n).
+// The same rules apply: recomputed wherever height is, price deltas arrive
+// as ProductListener calls, stock totals are added up when asked for, and
+// the tree relies on Main's storeLock (changes under the write lock, reads
+// under the read lock) rather than locking itself.
+public class ProductBSTByType implements ProductListener {
     private class Node {
         Product data;
         Node left, right;
+        int height;
+        int size;
+        double sumPrice;
 
         Node(Product p) {
             data = p;
+            height = 1;
+            size = 1;
+            sumPrice = p.getPrice();
         }
     }
 
+    // Tree order, used to sort batches for bulkLoad
+    private static final Comparator<Product> ORDER = (a, b) -> {
+        int cmp = a.getType().compareToIgnoreCase(b.getType());
+        return cmp != 0 ? cmp : a.getName().compareToIgnoreCase(b.getName());
+    };
+
     private Node root;
 
     public void insert(Product p) {
@@ -33,10 +63,12 @@ public class ProductBSTByType {
                 root.left = insertRec(root.left, p);
             } else if (nameCmp > 0) {
                 root.right = insertRec(root.right, p);
+            } else {
+                // ignore duplicates
+                return root;
             }
-            // else ignore duplicates
         }
-        return root;
+        return balance(root);
     }
 
     public Product search(String type) {
@@ -87,7 +119,7 @@ public class ProductBSTByType {
                 root.right = removeRec(root.right, min.data.getType(), min.data.getName());
             }
         }
-        return root;
+        return balance(root);
     }
 
     private Node findMin(Node root) {
@@ -97,6 +129,139 @@ public class ProductBSTByType {
         return root;
     }
 
+    // Hands every product of the given type to action, in name order.
+    // Only descends into subtrees that can hold that type: O(log n + k).
+    public void forEachOfType(String type, Consumer<Product> action) {
+        forEachOfTypeRec(root, type, action);
+    }
+
+    private void forEachOfTypeRec(Node root, String type, Consumer<Product> action) {
+        if (root == null) return;
+        int cmp = type.compareToIgnoreCase(root.data.getType());
+        if (cmp < 0) {
+            forEachOfTypeRec(root.left, type, action);
+        } else if (cmp > 0) {
+            forEachOfTypeRec(root.right, type, action);
+        } else {
+            // matches can be on both sides of a matching node
+            forEachOfTypeRec(root.left, type, action);
+            action.accept(root.data);
+            forEachOfTypeRec(root.right, type, action);
+        }
+    }
+
+    // Cursors: products in (type, name) order, handed out one at a time.
+    // Only the path to the next product is kept on a stack, so taking a
+    // page of k products is O(log n + k). Don't change the tree while a
+    // cursor is in use (seek a new one from the last key instead).
+
+    // Products from (type, name) on (inclusive); "" for name starts at the
+    // type's first product
+    public Iterator<Product> from(String type, String name) {
+        return new Cursor(type, name, true);
+    }
+
+    // Products after (type, name), e.g. to pick up where the last page ended
+    public Iterator<Product> after(String type, String name) {
+        return new Cursor(type, name, false);
+    }
+
+    // Same products as forEachOfType, pulled one at a time
+    public Iterator<Product> ofType(String type) {
+        return new Cursor(type, "", true) {
+            @Override
+            public boolean hasNext() {
+                return super.hasNext() && peek().getType().compareToIgnoreCase(type) == 0;
+            }
+        };
+    }
+
+    private class Cursor implements Iterator<Product> {
+        private final ArrayDeque<Node> stack = new ArrayDeque<>();
+
+        Cursor(String type, String name, boolean inclusive) {
+            // stack up the path to the first key >= (type, name) (> if exclusive)
+            Node n = root;
+            while (n != null) {
+                int cmp = n.data.getType().compareToIgnoreCase(type);
+                if (cmp == 0) {
+                    cmp = n.data.getName().compareToIgnoreCase(name);
+                }
+                if (cmp > 0 || (inclusive && cmp == 0)) {
+                    stack.push(n);
+                    n = n.left;
+                } else {
+                    n = n.right;
+                }
+            }
+        }
+
+        Product peek() {
+            return stack.peek().data;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !stack.isEmpty();
+        }
+
+        @Override
+        public Product next() {
+            if (!hasNext()) throw new NoSuchElementException();
+            Node n = stack.pop();
+            for (Node c = n.right; c != null; c = c.left) {
+                stack.push(c);
+            }
+            return n.data;
+        }
+    }
+
+    // Adds a whole batch at once: the batch is sorted by (type, name) once, merged
+    // with the tree's current in-order sequence, and the tree is rebuilt
+    // perfectly balanced from the merged array in linear time. Already sorted
+    // input (products.txt, imports) sorts in O(m). As with insert, a product
+    // whose key is already present (in the tree or earlier in the batch) is
+    // skipped. Returns the products that were added, in tree order.
+    public ArrayList<Product> bulkLoad(List<Product> batch) {
+        Product[] sorted = batch.toArray(new Product[0]);
+        Arrays.sort(sorted, ORDER); // stable, so the first duplicate wins
+        ArrayList<Product> existing = new ArrayList<>();
+        inOrder(existing);
+
+        Product[] merged = new Product[existing.size() + sorted.length];
+        ArrayList<Product> added = new ArrayList<>();
+        int n = 0, i = 0, j = 0;
+        while (j < sorted.length) {
+            Product p = sorted[j];
+            int cmp = i < existing.size() ? ORDER.compare(existing.get(i), p) : 1;
+            if (cmp < 0) {
+                merged[n++] = existing.get(i++);
+            } else {
+                if (cmp > 0 && (n == 0 || ORDER.compare(merged[n - 1], p) != 0)) {
+                    merged[n++] = p;
+                    added.add(p);
+                }
+                j++;
+            }
+        }
+        while (i < existing.size()) {
+            merged[n++] = existing.get(i++);
+        }
+        root = build(merged, 0, n);
+        return added;
+    }
+
+    // Builds a balanced subtree from sorted[lo, hi)
+    private Node build(Product[] sorted, int lo, int hi) {
+        if (lo >= hi) return null;
+        int mid = (lo + hi) >>> 1;
+        Node n = new Node(sorted[mid]);
+        n.left = build(sorted, lo, mid);
+        n.right = build(sorted, mid + 1, hi);
+        update(n);
+        return n;
+    }
+
     public void inOrder(ArrayList<Product> list) {
         inOrderRec(root, list);
     }
@@ -107,4 +272,157 @@ public class ProductBSTByType {
         list.add(root.data);
         inOrderRec(root.right, list);
     }
+
+    // --------------------------
+    // Order statistics
+    // --------------------------
+    public int size() {
+        return size(root);
+    }
+
+    // How many products sort before (type, name)
+    public int rank(String type, String name) {
+        return below(p -> compareKey(p, type, name)).count;
+    }
+
+    // The product at position i (0-based) in (type, name) order, or null
+    // if there's no such position
+    public Product select(int i) {
+        if (i < 0 || i >= size(root)) return null;
+        Node n = root;
+        while (true) {
+            int left = size(n.left);
+            if (i < left) {
+                n = n.left;
+            } else if (i == left) {
+                return n.data;
+            } else {
+                i -= left + 1;
+                n = n.right;
+            }
+        }
+    }
+
+    // Count and totals for one type. The count and price are O(log n);
+    // the stock total walks the type's products.
+    public ProductStats statsOfType(String type) {
+        ProductStats upTo = below(p -> p.getType().compareToIgnoreCase(type) <= 0 ? -1 : 1);
+        ProductStats ofType = upTo.minus(below(p -> p.getType().compareToIgnoreCase(type)));
+        long stock = 0;
+        for (Iterator<Product> it = ofType(type); it.hasNext(); ) {
+            stock += it.next().getQuantityInStock();
+        }
+        return new ProductStats(ofType.count, ofType.totalPrice, stock);
+    }
+
+    private static int compareKey(Product p, String type, String name) {
+        int cmp = p.getType().compareToIgnoreCase(type);
+        return cmp != 0 ? cmp : p.getName().compareToIgnoreCase(name);
+    }
+
+    // Count and total price of the products p with side(p) < 0, which have
+    // to be a prefix of the tree order: one walk down, adding up every left
+    // subtree that's entirely before the boundary. Stock isn't kept here.
+    private ProductStats below(ToIntFunction<Product> side) {
+        int count = 0;
+        double price = 0;
+        Node n = root;
+        while (n != null) {
+            if (side.applyAsInt(n.data) < 0) {
+                if (n.left != null) {
+                    count += n.left.size;
+                    price += n.left.sumPrice;
+                }
+                count++;
+                price += n.data.getPrice();
+                n = n.right;
+            } else {
+                n = n.left;
+            }
+        }
+        return new ProductStats(count, price, 0);
+    }
+
+    @Override
+    public void priceChanged(Product p, double oldPrice) {
+        addToPath(p, p.getPrice() - oldPrice);
+    }
+
+    // Adds a change to p's price into the totals from the root down to p.
+    // Products that aren't in the tree (snapshot copies, removed ones) are
+    // ignored.
+    private void addToPath(Product p, double price) {
+        Node n = root;
+        while (n != null && n.data != p) {
+            int cmp = compareKey(p, n.data.getType(), n.data.getName());
+            n = cmp < 0 ? n.left : cmp > 0 ? n.right : null;
+        }
+        if (n == null) return;
+        for (n = root; ; ) {
+            n.sumPrice += price;
+            if (n.data == p) return;
+            n = compareKey(p, n.data.getType(), n.data.getName()) < 0 ? n.left : n.right;
+        }
+    }
+
+    // --------------------------
+    // AVL balancing
+    // --------------------------
+    private int height(Node n) {
+        return n == null ? 0 : n.height;
+    }
+
+    private int size(Node n) {
+        return n == null ? 0 : n.size;
+    }
+
+    // Recomputes n's height, size and total price from its children
+    private void update(Node n) {
+        n.height = 1 + Math.max(height(n.left), height(n.right));
+        n.size = 1 + size(n.left) + size(n.right);
+        n.sumPrice = n.data.getPrice();
+        if (n.left != null) {
+            n.sumPrice += n.left.sumPrice;
+        }
+        if (n.right != null) {
+            n.sumPrice += n.right.sumPrice;
+        }
+    }
+
+    private Node rotateRight(Node n) {
+        Node l = n.left;
+        n.left = l.right;
+        l.right = n;
+        update(n);
+        update(l);
+        return l;
+    }
+
+    private Node rotateLeft(Node n) {
+        Node r = n.right;
+        n.right = r.left;
+        r.left = n;
+        update(n);
+        update(r);
+        return r;
+    }
+
+    // Restores the AVL invariant at n (children are already balanced)
+    private Node balance(Node n) {
+        update(n);
+        int bf = height(n.left) - height(n.right);
+        if (bf > 1) {
+            if (height(n.left.left) < height(n.left.right)) {
+                n.left = rotateLeft(n.left);
+            }
+            return rotateRight(n);
+        }
+        if (bf < -1) {
+            if (height(n.right.right) < height(n.right.left)) {
+                n.right = rotateRight(n.right);
+            }
+            return rotateLeft(n);
+        }
+        return n;
+    }
 }
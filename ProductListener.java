@@ -0,0 +1,15 @@
+// Gets told when a product's price, stock or description changes, so that
+// indexes over those fields can keep up. Register with Product.addListener;
+// every method is called after the field has changed.
+//
+// Price and description only change under Main's catalog write lock. Stock
+// is reserved lock-free, so stockChanged can be called from several threads
+// at once and must be thread-safe. By the time it runs the stock may have
+// moved on again, so it's given both sides of its own change.
+public interface ProductListener {
+    default void priceChanged(Product p, double oldPrice) {}
+
+    default void stockChanged(Product p, int oldQty, int newQty) {}
+
+    default void descriptionChanged(Product p, String oldDescription) {}
+}
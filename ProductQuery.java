@@ -0,0 +1,206 @@
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.function.Supplier;
+
+// A product search on several fields at once: every condition that's set
+// has to hold, unset ones match everything.
+//
+// plan() picks one index to pull candidates from and checks the rest of
+// the conditions on each candidate. It goes for whichever index has the
+// fewest candidates:
+//  - name tree, for an exact name or a name prefix
+//  - type tree, for a type
+//  - price index, for a price range (within the type if one is given)
+//  - brand index, for a brand
+//  - a scan of the whole name tree when nothing else applies
+// Exact name and brand counts are O(1). The tree and price range counts
+// walk the candidates, but stop at the best count found so far, so planning
+// never costs more than running the best plan would.
+public class ProductQuery {
+    private String name;
+    private String namePrefix;
+    private String type;
+    private String brand;
+    private double minPrice = Double.NEGATIVE_INFINITY;
+    private double maxPrice = Double.POSITIVE_INFINITY;
+    private boolean inStockOnly;
+
+    public ProductQuery name(String name) {
+        this.name = name;
+        return this;
+    }
+
+    public ProductQuery namePrefix(String prefix) {
+        this.namePrefix = prefix;
+        return this;
+    }
+
+    public ProductQuery type(String type) {
+        this.type = type;
+        return this;
+    }
+
+    public ProductQuery brand(String brand) {
+        this.brand = brand;
+        return this;
+    }
+
+    public ProductQuery minPrice(double min) {
+        this.minPrice = min;
+        return this;
+    }
+
+    public ProductQuery maxPrice(double max) {
+        this.maxPrice = max;
+        return this;
+    }
+
+    public ProductQuery inStockOnly() {
+        this.inStockOnly = true;
+        return this;
+    }
+
+    public boolean matches(Product p) {
+        return (name == null || p.getName().equalsIgnoreCase(name))
+                && (namePrefix == null || p.getName().regionMatches(true, 0, namePrefix, 0, namePrefix.length()))
+                && (type == null || p.getType().equalsIgnoreCase(type))
+                && (brand == null || p.getBrand().equalsIgnoreCase(brand))
+                && p.getPrice() >= minPrice && p.getPrice() <= maxPrice
+                && (!inStockOnly || p.getQuantityInStock() > 0);
+    }
+
+    // Picks the access path. The plan reads the indexes lazily, so it (and
+    // its iterator) must be used under the same catalog lock as this call.
+    public Plan plan(ProductBSTByName byName, ProductBSTByType byType, PriceIndex prices, BrandIndex brands) {
+        Plan plan = new Plan("full scan of the name tree", prices.size(), () -> byName.withPrefix(""));
+        plan.considered.add("full scan " + prices.size());
+
+        if (name != null) {
+            int n = byName.search(name) == null ? 0 : 1;
+            plan.consider(n, false, "name tree, name = " + name, () -> {
+                Product p = byName.search(name);
+                ArrayList<Product> one = new ArrayList<>(1);
+                if (p != null) one.add(p);
+                return one.iterator();
+            });
+        }
+        if (brand != null) {
+            plan.consider(brands.count(brand), false, "brand index, brand = " + brand,
+                    () -> brands.ofBrand(brand));
+        }
+        if (namePrefix != null) {
+            int n = countUpTo(byName.withPrefix(namePrefix), plan.estimate);
+            plan.consider(n, true, "name tree, name starts with " + namePrefix,
+                    () -> byName.withPrefix(namePrefix));
+        }
+        if (type != null) {
+            int n = countUpTo(byType.ofType(type), plan.estimate);
+            plan.consider(n, true, "type tree, type = " + type, () -> byType.ofType(type));
+        }
+        if (minPrice > Double.NEGATIVE_INFINITY || maxPrice < Double.POSITIVE_INFINITY) {
+            int n = prices.countInRange(minPrice, maxPrice, type, plan.estimate);
+            plan.consider(n, true, "price index, " + priceText() + (type != null ? " within type " + type : ""),
+                    () -> prices.rangeIterator(minPrice, maxPrice, type));
+        }
+        plan.filter = describe();
+        return plan;
+    }
+
+    private static int countUpTo(Iterator<Product> it, int cap) {
+        int count = 0;
+        while (count < cap && it.hasNext()) {
+            it.next();
+            count++;
+        }
+        return count;
+    }
+
+    private String priceText() {
+        if (minPrice == Double.NEGATIVE_INFINITY) return String.format("price <= %.2f", maxPrice);
+        if (maxPrice == Double.POSITIVE_INFINITY) return String.format("price >= %.2f", minPrice);
+        return String.format("price %.2f-%.2f", minPrice, maxPrice);
+    }
+
+    // The conditions, for explain()
+    private String describe() {
+        ArrayList<String> parts = new ArrayList<>();
+        if (name != null) parts.add("name = " + name);
+        if (namePrefix != null) parts.add("name starts with " + namePrefix);
+        if (type != null) parts.add("type = " + type);
+        if (brand != null) parts.add("brand = " + brand);
+        if (minPrice > Double.NEGATIVE_INFINITY || maxPrice < Double.POSITIVE_INFINITY) parts.add(priceText());
+        if (inStockOnly) parts.add("in stock");
+        return parts.isEmpty() ? "(none)" : String.join(", ", parts);
+    }
+
+    // The chosen access path plus the counts that led to it. Iterating
+    // pulls candidates from the index one at a time and only hands back the
+    // ones matching every condition, so taking the first few matches of a
+    // big result doesn't touch the rest.
+    public class Plan implements Iterable<Product> {
+        private String access;
+        private int estimate;
+        private Supplier<Iterator<Product>> source;
+        private final ArrayList<String> considered = new ArrayList<>();
+        private String filter;
+        private int examined;
+        private int matched;
+
+        private Plan(String access, int estimate, Supplier<Iterator<Product>> source) {
+            this.access = access;
+            this.estimate = estimate;
+            this.source = source;
+        }
+
+        // capped: the count stopped at the current estimate, so it's only a
+        // lower bound and can't beat it
+        private void consider(int count, boolean capped, String path, Supplier<Iterator<Product>> from) {
+            boolean stopped = capped && count == estimate;
+            considered.add(path.substring(0, path.indexOf(',')) + " " + (stopped ? ">=" : "") + count);
+            if (!stopped && count < estimate) {
+                access = path;
+                estimate = count;
+                source = from;
+            }
+        }
+
+        @Override
+        public Iterator<Product> iterator() {
+            Iterator<Product> candidates = source.get();
+            return new Iterator<Product>() {
+                private Product next;
+
+                @Override
+                public boolean hasNext() {
+                    while (next == null && candidates.hasNext()) {
+                        Product p = candidates.next();
+                        examined++;
+                        if (matches(p)) {
+                            matched++;
+                            next = p;
+                        }
+                    }
+                    return next != null;
+                }
+
+                @Override
+                public Product next() {
+                    if (!hasNext()) throw new NoSuchElementException();
+                    Product p = next;
+                    next = null;
+                    return p;
+                }
+            };
+        }
+
+        // Which index was used and why, and (once iterated) how much of it
+        // was read
+        public String explain() {
+            return "Plan: " + access + " (" + estimate + " candidate(s))\n"
+                    + "Filter: " + filter + "\n"
+                    + "Considered: " + String.join(", ", considered) + "\n"
+                    + "Examined " + examined + ", matched " + matched;
+        }
+    }
+}
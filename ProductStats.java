@@ -0,0 +1,27 @@
+// How many products the catalog or one type holds and their totals (see ProductBSTByName.stats and ProductBSTByType.statsOfType)
+public class ProductStats {
+    public final int count;
+    public final double totalPrice;
+    public final long totalStock;
+
+    public ProductStats(int count, double totalPrice, long totalStock) {
+        this.count = count;
+        this.totalPrice = totalPrice;
+        this.totalStock = totalStock;
+    }
+
+    public double averagePrice() {
+        return count == 0 ? 0 : totalPrice / count;
+    }
+
+    // The products in this range but not in the (smaller) range other
+    ProductStats minus(ProductStats other) {
+        return new ProductStats(count - other.count, totalPrice - other.totalPrice, totalStock - other.totalStock);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d product(s), %d unit(s) in stock, average price $%.2f",
+                count, totalStock, averagePrice());
+    }
+}
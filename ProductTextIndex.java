@@ -0,0 +1,217 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+// Inverted index over product name, brand and description.
+//
+// Every indexed product gets an int docId (handed out in increasing order)
+// and every word maps to a posting list: the sorted docIds of the products
+// containing it. A query only touches the posting lists of its words, so
+// it costs O(matching postings), not a catalog scan:
+//  - AND intersects the lists, starting from the shortest
+//  - OR merges them
+//
+// Words are runs of letters and digits, case-folded ("6-string" is "6" and
+// "string"). CamelCase names are split too ("AcousticGuitar"), and a
+// plural "s" is dropped so "beginner" finds "beginners".
+// Registered as a ProductListener so description changes are re-indexed.
+// Not thread-safe; Main updates it under the catalog write lock.
+public class ProductTextIndex implements ProductListener {
+    // Sorted docIds for one word
+    private static class Postings {
+        int[] ids = new int[2];
+        int size;
+
+        void add(int id) {
+            // new products have the highest docId, so this is almost always an append
+            int at = size == 0 || ids[size - 1] < id ? size : -(Arrays.binarySearch(ids, 0, size, id) + 1);
+            if (at < 0) return; // already there
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            System.arraycopy(ids, at, ids, at + 1, size - at);
+            ids[at] = id;
+            size++;
+        }
+
+        void remove(int id) {
+            int at = Arrays.binarySearch(ids, 0, size, id);
+            if (at < 0) return;
+            System.arraycopy(ids, at + 1, ids, at, size - at - 1);
+            size--;
+        }
+    }
+
+    private final HashMap<String, Postings> postings = new HashMap<>();
+    // docId -> product and the words it was indexed under (null once removed)
+    private final ArrayList<Product> docs = new ArrayList<>();
+    private final ArrayList<String[]> docWords = new ArrayList<>();
+    // case-folded product name -> docId
+    private final HashMap<String, Integer> idByName = new HashMap<>();
+
+    public void add(Product p) {
+        String key = p.getName().toLowerCase();
+        if (idByName.containsKey(key)) return;
+        int id = docs.size();
+        String[] words = wordsOf(p);
+        docs.add(p);
+        docWords.add(words);
+        idByName.put(key, id);
+        for (String w : words) {
+            postings.computeIfAbsent(w, k -> new Postings()).add(id);
+        }
+    }
+
+    // Re-indexes p (name and brand never change)
+    @Override
+    public void descriptionChanged(Product p, String oldDescription) {
+        Integer id = idByName.get(p.getName().toLowerCase());
+        if (id == null || docs.get(id) != p) return; // not in the store
+        String[] before = docWords.get(id);
+        String[] after = wordsOf(p);
+        // both are sorted, so one merge finds what was dropped and what's new
+        int i = 0, j = 0;
+        while (i < before.length || j < after.length) {
+            int cmp = i == before.length ? 1 : j == after.length ? -1 : before[i].compareTo(after[j]);
+            if (cmp < 0) {
+                removePosting(before[i++], id);
+            } else if (cmp > 0) {
+                postings.computeIfAbsent(after[j++], k -> new Postings()).add(id);
+            } else {
+                i++;
+                j++;
+            }
+        }
+        docWords.set(id, after);
+    }
+
+    public void remove(Product p) {
+        Integer id = idByName.remove(p.getName().toLowerCase());
+        if (id == null) return;
+        for (String w : docWords.get(id)) {
+            removePosting(w, id);
+        }
+        docs.set(id, null);
+        docWords.set(id, null);
+    }
+
+    private void removePosting(String word, int id) {
+        Postings list = postings.get(word);
+        if (list == null) return;
+        list.remove(id);
+        if (list.size == 0) {
+            postings.remove(word);
+        }
+    }
+
+    // Products containing every word of the query, oldest first
+    public List<Product> searchAll(String query) {
+        String[] words = tokenize(query);
+        ArrayList<Product> result = new ArrayList<>();
+        if (words.length == 0) return result;
+        Postings[] lists = new Postings[words.length];
+        for (int i = 0; i < words.length; i++) {
+            lists[i] = postings.get(words[i]);
+            if (lists[i] == null) return result; // a word nobody has
+        }
+        Arrays.sort(lists, (a, b) -> Integer.compare(a.size, b.size));
+
+        // Walk the shortest list and look each id up in the others. The
+        // cursors only move forward, so every list is read at most once.
+        int[] at = new int[lists.length];
+        Postings shortest = lists[0];
+        outer:
+        for (int k = 0; k < shortest.size; k++) {
+            int id = shortest.ids[k];
+            for (int l = 1; l < lists.length; l++) {
+                Postings other = lists[l];
+                while (at[l] < other.size && other.ids[at[l]] < id) {
+                    at[l]++;
+                }
+                if (at[l] == other.size) break outer;
+                if (other.ids[at[l]] != id) continue outer;
+            }
+            result.add(docs.get(id));
+        }
+        return result;
+    }
+
+    // Products containing at least one word of the query, oldest first
+    public List<Product> searchAny(String query) {
+        String[] words = tokenize(query);
+        ArrayList<Postings> lists = new ArrayList<>();
+        for (String w : words) {
+            Postings list = postings.get(w);
+            if (list != null) lists.add(list);
+        }
+        ArrayList<Product> result = new ArrayList<>();
+        // Merge: repeatedly take the smallest head id across the lists.
+        // Queries have a handful of words, so a linear scan of the heads
+        // beats a heap.
+        int[] at = new int[lists.size()];
+        while (true) {
+            int min = Integer.MAX_VALUE;
+            for (int l = 0; l < lists.size(); l++) {
+                if (at[l] < lists.get(l).size) {
+                    min = Math.min(min, lists.get(l).ids[at[l]]);
+                }
+            }
+            if (min == Integer.MAX_VALUE) break;
+            result.add(docs.get(min));
+            for (int l = 0; l < lists.size(); l++) {
+                if (at[l] < lists.get(l).size && lists.get(l).ids[at[l]] == min) {
+                    at[l]++;
+                }
+            }
+        }
+        return result;
+    }
+
+    public int size() {
+        return idByName.size();
+    }
+
+    // --------------------------
+    // Tokenizing
+    // --------------------------
+    private static String[] wordsOf(Product p) {
+        return tokenize(p.getName() + " " + p.getBrand() + " " + p.getDescription());
+    }
+
+    // "strings" -> "string", but leaves "bass" and short words alone
+    private static String fold(String word) {
+        int n = word.length();
+        if (n > 3 && word.charAt(n - 1) == 's' && word.charAt(n - 2) != 's') {
+            return word.substring(0, n - 1);
+        }
+        return word;
+    }
+
+    // Distinct case-folded words, sorted
+    static String[] tokenize(String text) {
+        ArrayList<String> words = new ArrayList<>();
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean wordChar = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            boolean camelBreak = wordChar && start >= 0
+                    && Character.isUpperCase(text.charAt(i)) && Character.isLowerCase(text.charAt(i - 1));
+            if (start >= 0 && (!wordChar || camelBreak)) {
+                words.add(fold(text.substring(start, i).toLowerCase()));
+                start = -1;
+            }
+            if (wordChar && start < 0) {
+                start = i;
+            }
+        }
+        String[] sorted = words.toArray(new String[0]);
+        Arrays.sort(sorted);
+        int n = 0;
+        for (int i = 0; i < sorted.length; i++) {
+            if (n == 0 || !sorted[i].equals(sorted[n - 1])) {
+                sorted[n++] = sorted[i];
+            }
+        }
+        return Arrays.copyOf(sorted, n);
+    }
+}
@@ -0,0 +1,31 @@
+// What a batch ship did: how many orders went out, per shipping method.
+// Returned instead of printing every order. (A low-high range of order IDs
+// would suggest everything in between went out, which it usually didn't.)
+public class ShippingSummary {
+    private static final Order.ShippingMethod[] METHODS = Order.ShippingMethod.values();
+
+    private final int[] byMethod = new int[METHODS.length];
+    private int total;
+
+    public void add(Order o) {
+        byMethod[o.getShippingMethod().ordinal()]++;
+        total++;
+    }
+
+    public int getTotal() { return total; }
+    public int getCount(Order.ShippingMethod method) { return byMethod[method.ordinal()]; }
+
+    @Override
+    public String toString() {
+        if (total == 0) {
+            return "No orders shipped.";
+        }
+        StringBuilder sb = new StringBuilder("Shipped " + total + " order(s):");
+        for (Order.ShippingMethod m : METHODS) {
+            if (byMethod[m.ordinal()] > 0) {
+                sb.append(' ').append(m).append('=').append(byMethod[m.ordinal()]);
+            }
+        }
+        return sb.toString();
+    }
+}
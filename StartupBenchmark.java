@@ -0,0 +1,130 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+// Compares store startup time from the text files (parsed on one thread and
+// on every core) vs the binary snapshot. Generates a dataset in a temp
+// directory, then times Main's loaders on it.
+//
+// Usage: java StartupBenchmark [orderCount]   (default 1,000,000)
+// Customers are generated at orderCount / 10 and products at orderCount / 100.
+public class StartupBenchmark {
+    private static final int ROUNDS = 3;
+
+    public static void main(String[] args) throws IOException {
+        int orderCount = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int customerCount = Math.max(10, orderCount / 10);
+        int productCount = Math.max(10, orderCount / 100);
+        String[] types = {"String", "Woodwind", "Brass", "Percussion", "Keyboard"};
+        String[] brands = {"Yamaha", "Fender", "Gibson", "Selmer", "Roland", "Ibanez"};
+        Order.ShippingMethod[] methods = Order.ShippingMethod.values();
+        Random rnd = new Random(42);
+
+        ArrayList<User> users = new ArrayList<>();
+        for (int i = 0; i < customerCount; i++) {
+            users.add(new Customer("cust" + i, "pw" + i, "First" + (i % 5000), "Last" + (i % 7919)));
+        }
+        users.add(new Employee("emp1", "emp1pass", "Emily", "Stone"));
+        users.add(new Manager("mgr1", "mgrpass", "Michael", "Manager"));
+
+        ArrayList<Product> products = new ArrayList<>();
+        for (int i = 0; i < productCount; i++) {
+            products.add(new Product(String.format("Instrument%07d", i), types[i % types.length],
+                    10 + rnd.nextInt(200000) / 100.0, brands[rnd.nextInt(brands.length)],
+                    rnd.nextInt(50), "Generated instrument number " + i));
+        }
+
+        ArrayList<Order> orders = new ArrayList<>();
+        for (int i = 0; i < orderCount; i++) {
+            Order o = new Order(1000 + i, "cust" + rnd.nextInt(customerCount),
+                    products.get(rnd.nextInt(productCount)).getName(), methods[rnd.nextInt(methods.length)]);
+            o.setShipped(rnd.nextInt(4) == 0);
+            orders.add(o);
+        }
+
+        File dir = Files.createTempDirectory("store-bench").toFile();
+        String customers = new File(dir, "customers.txt").getPath();
+        String employees = new File(dir, "employees.txt").getPath();
+        String managers = new File(dir, "managers.txt").getPath();
+        String productsFile = new File(dir, "products.txt").getPath();
+        String ordersFile = new File(dir, "orders.txt").getPath();
+        File snapshot = new File(dir, "store.snap");
+
+        writeUsers(customers, users, Customer.class);
+        writeUsers(employees, users, Employee.class);
+        writeUsers(managers, users, Manager.class);
+        try (PrintWriter pw = new PrintWriter(productsFile)) {
+            for (Product p : products) {
+                pw.println(p.getName() + "," + p.getType() + "," + p.getPrice() + ","
+                        + p.getBrand() + "," + p.getQuantityInStock() + "," + p.getDescription());
+            }
+        }
+        try (PrintWriter pw = new PrintWriter(ordersFile)) {
+            for (Order o : orders) {
+                pw.println(o.getOrderID() + "," + o.getUsername() + "," + o.getProductName() + ","
+                        + o.getShippingMethod() + "," + o.isShipped());
+            }
+        }
+        StoreSnapshot.write(snapshot, users, products, orders);
+        users = null;
+        products = null;
+        orders = null;
+
+        System.out.printf("%,d users, %,d products, %,d orders%n", customerCount + 2, productCount, orderCount);
+        System.out.printf("text files: %,d bytes, snapshot: %,d bytes%n",
+                new File(customers).length() + new File(productsFile).length() + new File(ordersFile).length(),
+                snapshot.length());
+
+        ForkJoinPool single = new ForkJoinPool(1);
+        ForkJoinPool all = ForkJoinPool.commonPool();
+        long bestText = Long.MAX_VALUE;
+        long bestParallel = Long.MAX_VALUE;
+        long bestSnap = Long.MAX_VALUE;
+        for (int round = 0; round < ROUNDS; round++) {
+            Main.resetStore();
+            System.gc();
+            long t0 = System.nanoTime();
+            Main.loadTextFiles(single, customers, employees, managers, productsFile, ordersFile);
+            bestText = Math.min(bestText, System.nanoTime() - t0);
+
+            Main.resetStore();
+            System.gc();
+            t0 = System.nanoTime();
+            Main.loadTextFiles(all, customers, employees, managers, productsFile, ordersFile);
+            bestParallel = Math.min(bestParallel, System.nanoTime() - t0);
+
+            Main.resetStore();
+            System.gc();
+            t0 = System.nanoTime();
+            Main.loadSnapshot(snapshot.getPath());
+            bestSnap = Math.min(bestSnap, System.nanoTime() - t0);
+        }
+        Main.resetStore();
+        single.shutdown();
+
+        System.out.printf("text load, 1 thread:   %,8d ms (best of %d)%n", bestText / 1_000_000, ROUNDS);
+        System.out.printf("text load, %2d threads: %,8d ms (best of %d)%n",
+                all.getParallelism(), bestParallel / 1_000_000, ROUNDS);
+        System.out.printf("snapshot load:         %,8d ms (best of %d)%n", bestSnap / 1_000_000, ROUNDS);
+
+        for (File f : dir.listFiles()) {
+            f.delete();
+        }
+        dir.delete();
+    }
+
+    private static void writeUsers(String file, ArrayList<User> users, Class<?> kind) throws IOException {
+        try (PrintWriter pw = new PrintWriter(file)) {
+            for (User u : users) {
+                if (u.getClass() == kind) {
+                    pw.println(u.getUsername() + "," + u.getPassword() + ","
+                            + u.getFirstName() + "," + u.getLastName());
+                }
+            }
+        }
+    }
+}
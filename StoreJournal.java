@@ -0,0 +1,271 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.function.Consumer;
+
+// Append-only write-ahead journal of store mutations.
+// Each entry is one line of tab-separated fields (tabs, newlines and
+// backslashes inside a field are escaped). append() only buffers the entry;
+// a background thread writes whatever has piled up and fsyncs it as one
+// batch (group commit), then wakes everyone waiting in awaitDurable().
+public class StoreJournal {
+    private final File file;
+    private FileChannel channel;
+
+    private StringBuilder pending = new StringBuilder();
+    private long lastSeq;    // sequence number of the newest appended entry
+    private long durableSeq; // every entry up to here is on disk
+    private int entryCount;  // entries in the current file
+    private IOException failure;
+    private boolean closed;
+
+    private final Thread flusher;
+
+    public StoreJournal(File file) throws IOException {
+        this.file = file;
+        // a torn entry left by a crash would otherwise run into the first
+        // new one and corrupt both
+        trimTornTail(file);
+        this.entryCount = countEntries(file);
+        this.channel = open(file);
+        flusher = new Thread(this::flushLoop, "journal-flusher");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    private static FileChannel open(File file) throws IOException {
+        return FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    // Buffers one entry and returns its sequence number. The entry is not
+    // durable until awaitDurable(seq) returns.
+    public synchronized long append(String... fields) throws IOException {
+        if (closed) throw new IOException("journal is closed");
+        for (int i = 0; i < fields.length; i++) {
+            if (i > 0) pending.append('\t');
+            escape(fields[i], pending);
+        }
+        pending.append('\n');
+        entryCount++;
+        notifyAll();
+        return ++lastSeq;
+    }
+
+    public synchronized void awaitDurable(long seq) throws IOException {
+        while (durableSeq < seq && failure == null) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("interrupted while waiting for journal", e);
+            }
+        }
+        if (durableSeq < seq) throw failure;
+    }
+
+    // append + awaitDurable
+    public void write(String... fields) throws IOException {
+        awaitDurable(append(fields));
+    }
+
+    // Number of entries in the current journal file
+    public synchronized int entryCount() {
+        return entryCount;
+    }
+
+    // Moves everything journaled so far into retired and starts an empty
+    // journal file. Used by compaction: the caller captures a snapshot of the
+    // store, rolls the journal over, and deletes retired once the snapshot is
+    // safely written. The caller must make sure nothing is appended between
+    // the capture and this call.
+    public synchronized void rollover(File retired) throws IOException {
+        // awaitDurable lets go of the monitor while it waits, so check again
+        // until everything is written: only then is the flusher done with
+        // the channel
+        while (durableSeq < lastSeq) {
+            awaitDurable(lastSeq);
+        }
+        channel.close();
+        if (retired.exists()) {
+            // an earlier compaction didn't finish; keep its entries too
+            trimTornTail(retired);
+            Files.write(retired.toPath(), Files.readAllBytes(file.toPath()), StandardOpenOption.APPEND);
+            Files.delete(file.toPath());
+        } else {
+            Files.move(file.toPath(), retired.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        }
+        channel = open(file);
+        entryCount = 0;
+    }
+
+    public void close() throws IOException {
+        synchronized (this) {
+            awaitDurable(lastSeq);
+            closed = true;
+            notifyAll();
+        }
+        try {
+            flusher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        channel.close();
+    }
+
+    private void flushLoop() {
+        while (true) {
+            StringBuilder batch;
+            long batchSeq;
+            FileChannel ch;
+            synchronized (this) {
+                while (pending.length() == 0 && !closed) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (pending.length() == 0) return; // closed and drained
+                batch = pending;
+                pending = new StringBuilder();
+                batchSeq = lastSeq;
+                ch = channel;
+            }
+            // Entries appended while this write + fsync runs form the next batch
+            try {
+                ByteBuffer buf = StandardCharsets.UTF_8.encode(batch.toString());
+                while (buf.hasRemaining()) {
+                    ch.write(buf);
+                }
+                ch.force(false);
+                synchronized (this) {
+                    durableSeq = batchSeq;
+                    notifyAll();
+                }
+            } catch (IOException e) {
+                synchronized (this) {
+                    failure = e;
+                    notifyAll();
+                }
+                return;
+            }
+        }
+    }
+
+    // --------------------------
+    // Reading
+    // --------------------------
+
+    // Feeds every complete entry in file to apply, oldest first, and returns
+    // how many there were. A missing file has no entries. A torn last line
+    // (crash mid-write) is skipped; the StoreJournal constructor cuts it off
+    // before anything new is appended.
+    public static int replay(File file, Consumer<String[]> apply) throws IOException {
+        if (!file.exists()) return 0;
+        byte[] bytes = Files.readAllBytes(file.toPath());
+        int end = completeLength(bytes, bytes.length);
+        String text = new String(bytes, 0, end, StandardCharsets.UTF_8);
+        int count = 0;
+        int start = 0;
+        while (start < text.length()) {
+            int nl = text.indexOf('\n', start);
+            if (nl > start) {
+                apply.accept(split(text, start, nl));
+                count++;
+            }
+            start = nl + 1;
+        }
+        return count;
+    }
+
+    // Offset just past the last '\n' in the first length bytes, or 0
+    private static int completeLength(byte[] bytes, int length) {
+        int end = length;
+        while (end > 0 && bytes[end - 1] != '\n') {
+            end--;
+        }
+        return end;
+    }
+
+    // Cuts off a torn last line, if there is one
+    private static void trimTornTail(File file) throws IOException {
+        if (!file.exists()) return;
+        try (FileChannel ch = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long size = ch.size();
+            long end = size;
+            byte[] block = new byte[4096];
+            // read backwards a block at a time until a '\n' turns up
+            while (end > 0) {
+                int n = (int) Math.min(block.length, end);
+                ByteBuffer buf = ByteBuffer.wrap(block, 0, n);
+                while (buf.hasRemaining()) {
+                    if (ch.read(buf, end - n + buf.position()) < 0) throw new IOException("journal shrank while reading");
+                }
+                int complete = completeLength(block, n);
+                if (complete > 0) {
+                    end = end - n + complete;
+                    break;
+                }
+                end -= n;
+            }
+            if (end < size) {
+                ch.truncate(end);
+                ch.force(false);
+            }
+        }
+    }
+
+    private static int countEntries(File file) throws IOException {
+        if (!file.exists()) return 0;
+        int count = 0;
+        try (BufferedReader br = new BufferedReader(
+                new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+            while (br.readLine() != null) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static void escape(String s, StringBuilder out) {
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '\\': out.append("\\\\"); break;
+                case '\t': out.append("\\t"); break;
+                case '\n': out.append("\\n"); break;
+                case '\r': out.append("\\r"); break;
+                default: out.append(c);
+            }
+        }
+    }
+
+    private static String[] split(String line, int start, int end) {
+        ArrayList<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        for (int i = start; i < end; i++) {
+            char c = line.charAt(i);
+            if (c == '\t') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else if (c == '\\' && i + 1 < end) {
+                char e = line.charAt(++i);
+                field.append(e == 't' ? '\t' : e == 'n' ? '\n' : e == 'r' ? '\r' : e);
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString());
+        return fields.toArray(new String[0]);
+    }
+}
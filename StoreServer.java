@@ -0,0 +1,66 @@
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Scanner;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// Serves the store menus over TCP, one session per connection.
+// The protocol is just the console's: the server prints the menus and
+// prompts as lines of text and reads one line per answer, so any line-based
+// client (telnet, nc) works.
+//
+// Each connection runs on its own thread. On a JVM with virtual threads
+// (Java 21+) every session gets a virtual thread, so thousands of mostly idle
+// sessions only cost a little heap each; older JVMs fall back to a cached pool
+// of platform threads.
+public class StoreServer {
+    public static final int DEFAULT_PORT = 5050;
+
+    private final int port;
+
+    public StoreServer(int port) {
+        this.port = port;
+    }
+
+    // Accepts connections until the socket fails
+    public void serve() throws IOException {
+        ExecutorService sessions = newSessionExecutor();
+        try (ServerSocket server = new ServerSocket(port)) {
+            System.out.println("Store server listening on port " + server.getLocalPort());
+            while (true) {
+                Socket client = server.accept();
+                sessions.execute(() -> runSession(client));
+            }
+        } finally {
+            sessions.shutdown();
+        }
+    }
+
+    private static void runSession(Socket client) {
+        try (Socket s = client) {
+            Scanner in = new Scanner(new BufferedInputStream(s.getInputStream()), StandardCharsets.UTF_8);
+            // Unbuffered, so prompts without a newline reach the client
+            // before the session blocks reading the answer
+            PrintStream out = new PrintStream(s.getOutputStream(), true, StandardCharsets.UTF_8);
+            Main.runSession(in, out);
+        } catch (IOException e) {
+            System.out.println("Session " + client.getRemoteSocketAddress() + " failed: " + e.getMessage());
+        } catch (RuntimeException e) {
+            // one broken session shouldn't take the server down
+            System.out.println("Session " + client.getRemoteSocketAddress() + " crashed: " + e);
+        }
+    }
+
+    // Executors.newVirtualThreadPerTaskExecutor() if this JVM has it
+    private static ExecutorService newSessionExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool();
+        }
+    }
+}
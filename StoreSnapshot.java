@@ -0,0 +1,251 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+// Binary snapshot of the whole store, read back in one piece.
+//
+// Layout (big-endian):
+//   header      magic, version, stringCount, userCount, productCount, orderCount
+//   strings     (stringCount + 1) int offsets into the blob, then the UTF-8 blob
+//   users       kind:byte username password firstName lastName      (string ids)
+//   products    name type price:double brand qty:int description     (string ids)
+//   orders      orderID:int username product method:byte shipped:byte
+//
+// Every distinct string is stored (and decoded) once, so e.g. a username
+// shared by thousands of orders becomes one String on load. Records are
+// fixed width, so a section is read with plain absolute offsets.
+public class StoreSnapshot {
+    private static final int MAGIC = 0x4D495353; // "MISS" - Musical Instrument Store Snapshot
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 6 * 4;
+    private static final int USER_BYTES = 1 + 4 * 4;
+    private static final int PRODUCT_BYTES = 4 + 4 + 8 + 4 + 4 + 4;
+    private static final int ORDER_BYTES = 4 + 4 + 4 + 1 + 1;
+
+    private static final byte CUSTOMER = 0;
+    private static final byte EMPLOYEE = 1;
+    private static final byte MANAGER = 2;
+
+    // ShippingMethod is stored by ordinal; bump VERSION if the enum changes
+    private static final Order.ShippingMethod[] METHODS = Order.ShippingMethod.values();
+
+    public final ArrayList<User> users;
+    public final ArrayList<Product> products;
+    public final ArrayList<Order> orders;
+
+    private StoreSnapshot(ArrayList<User> users, ArrayList<Product> products, ArrayList<Order> orders) {
+        this.users = users;
+        this.products = products;
+        this.orders = orders;
+    }
+
+    // --------------------------
+    // Writing
+    // --------------------------
+    public static void write(File file, List<User> users, List<Product> products, List<Order> orders)
+            throws IOException {
+        // Build the string dictionary
+        HashMap<String, Integer> ids = new HashMap<>();
+        ArrayList<byte[]> strings = new ArrayList<>();
+        int[] userIds = new int[users.size() * 4];
+        int[] productIds = new int[products.size() * 4];
+        int[] orderIds = new int[orders.size() * 2];
+        int k = 0;
+        for (User u : users) {
+            userIds[k++] = intern(u.getUsername(), ids, strings);
+            userIds[k++] = intern(u.getPassword(), ids, strings);
+            userIds[k++] = intern(u.getFirstName(), ids, strings);
+            userIds[k++] = intern(u.getLastName(), ids, strings);
+        }
+        k = 0;
+        for (Product p : products) {
+            productIds[k++] = intern(p.getName(), ids, strings);
+            productIds[k++] = intern(p.getType(), ids, strings);
+            productIds[k++] = intern(p.getBrand(), ids, strings);
+            productIds[k++] = intern(p.getDescription(), ids, strings);
+        }
+        k = 0;
+        for (Order o : orders) {
+            orderIds[k++] = intern(o.getUsername(), ids, strings);
+            orderIds[k++] = intern(o.getProductName(), ids, strings);
+        }
+
+        File tmp = new File(file.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(tmp), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(strings.size());
+            out.writeInt(users.size());
+            out.writeInt(products.size());
+            out.writeInt(orders.size());
+
+            int offset = 0;
+            out.writeInt(0);
+            for (byte[] b : strings) {
+                offset += b.length;
+                out.writeInt(offset);
+            }
+            for (byte[] b : strings) {
+                out.write(b);
+            }
+
+            k = 0;
+            for (User u : users) {
+                out.writeByte(u instanceof Manager ? MANAGER : u instanceof Employee ? EMPLOYEE : CUSTOMER);
+                for (int i = 0; i < 4; i++) {
+                    out.writeInt(userIds[k++]);
+                }
+            }
+            k = 0;
+            for (Product p : products) {
+                out.writeInt(productIds[k++]);
+                out.writeInt(productIds[k++]);
+                out.writeDouble(p.getPrice());
+                out.writeInt(productIds[k++]);
+                out.writeInt(p.getQuantityInStock());
+                out.writeInt(productIds[k++]);
+            }
+            k = 0;
+            for (Order o : orders) {
+                out.writeInt(o.getOrderID());
+                out.writeInt(orderIds[k++]);
+                out.writeInt(orderIds[k++]);
+                out.writeByte(o.getShippingMethod().ordinal());
+                out.writeByte(o.isShipped() ? 1 : 0);
+            }
+        }
+        // fsync before the rename so the snapshot is never seen half-written
+        try (FileChannel ch = FileChannel.open(tmp.toPath(), StandardOpenOption.WRITE)) {
+            ch.force(true);
+        }
+        Files.move(tmp.toPath(), file.toPath(),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static int intern(String s, HashMap<String, Integer> ids, ArrayList<byte[]> strings) {
+        Integer id = ids.get(s);
+        if (id == null) {
+            id = strings.size();
+            ids.put(s, id);
+            strings.add(s.getBytes(StandardCharsets.UTF_8));
+        }
+        return id;
+    }
+
+    // --------------------------
+    // Reading
+    // --------------------------
+    public static StoreSnapshot read(File file) throws IOException {
+        ByteBuffer buf;
+        try (FileChannel ch = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long fileSize = ch.size();
+            if (fileSize < HEADER_BYTES || fileSize > Integer.MAX_VALUE) {
+                throw new IOException(file + " is not a store snapshot");
+            }
+            // Read into the heap rather than mapping: a mapping stays open
+            // until it's garbage collected, and on Windows an open mapping
+            // stops the next snapshot from being moved over this file
+            buf = ByteBuffer.allocate((int) fileSize);
+            while (buf.hasRemaining()) {
+                if (ch.read(buf) < 0) throw new IOException(file + " is truncated or corrupt");
+            }
+        }
+        try {
+            return decode(file, buf);
+        } catch (IndexOutOfBoundsException e) {
+            throw new IOException(file + " is truncated or corrupt", e);
+        }
+    }
+
+    // Every count, offset and id comes from the file, so each one is
+    // checked before it's used
+    private static StoreSnapshot decode(File file, ByteBuffer buf) throws IOException {
+        int fileSize = buf.capacity();
+        if (buf.getInt(0) != MAGIC) throw new IOException(file + " is not a store snapshot");
+        if (buf.getInt(4) != VERSION) throw new IOException(file + " has unsupported version " + buf.getInt(4));
+        int stringCount = buf.getInt(8);
+        int userCount = buf.getInt(12);
+        int productCount = buf.getInt(16);
+        int orderCount = buf.getInt(20);
+        if (stringCount < 0 || userCount < 0 || productCount < 0 || orderCount < 0) {
+            throw new IOException(file + " is truncated or corrupt");
+        }
+
+        // Strings: offsets table, then the blob
+        int offsets = HEADER_BYTES;
+        long blobStart = offsets + ((long) stringCount + 1) * 4;
+        if (blobStart > fileSize) throw new IOException(file + " is truncated or corrupt");
+        int blob = (int) blobStart;
+        int blobLength = buf.getInt(offsets + stringCount * 4);
+        if (blobLength < 0 || blobLength > fileSize - blob) {
+            throw new IOException(file + " is truncated or corrupt");
+        }
+        int users = blob + blobLength;
+        long products = users + (long) userCount * USER_BYTES;
+        long orders = products + (long) productCount * PRODUCT_BYTES;
+        long expected = orders + (long) orderCount * ORDER_BYTES;
+        if (expected != fileSize) {
+            throw new IOException(file + " is truncated or corrupt");
+        }
+
+        byte[] bytes = new byte[blobLength];
+        buf.position(blob);
+        buf.get(bytes);
+        String[] str = new String[stringCount];
+        int start = 0;
+        for (int i = 0; i < stringCount; i++) {
+            int end = buf.getInt(offsets + (i + 1) * 4);
+            if (end < start || end > blobLength) throw new IOException(file + " is truncated or corrupt");
+            str[i] = new String(bytes, start, end - start, StandardCharsets.UTF_8);
+            start = end;
+        }
+
+        ArrayList<User> userList = new ArrayList<>(userCount);
+        for (int i = 0, at = users; i < userCount; i++, at += USER_BYTES) {
+            String username = string(file, str, buf.getInt(at + 1));
+            String password = string(file, str, buf.getInt(at + 5));
+            String first = string(file, str, buf.getInt(at + 9));
+            String last = string(file, str, buf.getInt(at + 13));
+            switch (buf.get(at)) {
+                case MANAGER: userList.add(new Manager(username, password, first, last)); break;
+                case EMPLOYEE: userList.add(new Employee(username, password, first, last)); break;
+                default: userList.add(new Customer(username, password, first, last)); break;
+            }
+        }
+
+        ArrayList<Product> productList = new ArrayList<>(productCount);
+        for (int i = 0, at = (int) products; i < productCount; i++, at += PRODUCT_BYTES) {
+            productList.add(new Product(string(file, str, buf.getInt(at)), string(file, str, buf.getInt(at + 4)),
+                    buf.getDouble(at + 8), string(file, str, buf.getInt(at + 16)),
+                    buf.getInt(at + 20), string(file, str, buf.getInt(at + 24))));
+        }
+
+        ArrayList<Order> orderList = new ArrayList<>(orderCount);
+        for (int i = 0, at = (int) orders; i < orderCount; i++, at += ORDER_BYTES) {
+            int method = buf.get(at + 12);
+            if (method < 0 || method >= METHODS.length) throw new IOException(file + " is truncated or corrupt");
+            Order o = new Order(buf.getInt(at), string(file, str, buf.getInt(at + 4)),
+                    string(file, str, buf.getInt(at + 8)), METHODS[method]);
+            o.setShipped(buf.get(at + 13) != 0);
+            orderList.add(o);
+        }
+        return new StoreSnapshot(userList, productList, orderList);
+    }
+
+    private static String string(File file, String[] str, int id) throws IOException {
+        if (id < 0 || id >= str.length) throw new IOException(file + " is truncated or corrupt");
+        return str[id];
+    }
+}